@@ -0,0 +1,80 @@
+package io.holunda.camunda.example.caseinstancemigration.benchmark;
+
+import io.holunda.camunda.example.caseinstancemigration.Application;
+import org.camunda.bpm.engine.CaseService;
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.RepositoryService;
+import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.camunda.bpm.engine.impl.interceptor.CommandExecutor;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+
+/**
+ * Application on a fresh embedded H2 database with a generated population of case instances, shared by all
+ * invocations of one benchmark trial. Override the population with {@code -p instanceCount=10000} etc.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkContext {
+
+    @Param("1000")
+    public int instanceCount;
+
+    @Param("3")
+    public int executionsPerInstance;
+
+    @Param("1")
+    public int tasksPerInstance;
+
+    @Param("full")
+    public String historyLevel;
+
+    public ConfigurableApplicationContext ctx;
+
+    public CasePopulation population;
+
+    public List<String> caseInstanceIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ctx = new SpringApplicationBuilder(Application.class)
+                .web(false)
+                .properties(
+                        "spring.datasource.generate-unique-name=true",
+                        "camunda.bpm.history-level=" + historyLevel,
+                        "camunda.bpm.migration.case-instance-migration-on-startup=false",
+                        "logging.level.io.holunda=WARN")
+                .run();
+
+        population = new CasePopulation(ctx.getBean(RepositoryService.class), ctx.getBean(CaseService.class), executionsPerInstance, tasksPerInstance);
+        population.deploy();
+        caseInstanceIds = population.createCaseInstances(instanceCount);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ctx.close();
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return ctx.getBean(type);
+    }
+
+    /**
+     * Command executor opening a new transaction, like the migrator does for every chunk.
+     */
+    public CommandExecutor getCommandExecutorTxRequiresNew() {
+        return ((ProcessEngineConfigurationImpl) ctx.getBean(ProcessEngine.class).getProcessEngineConfiguration()).getCommandExecutorTxRequiresNew();
+    }
+
+    public CommandExecutor getCommandExecutorTxRequired() {
+        return ((ProcessEngineConfigurationImpl) ctx.getBean(ProcessEngine.class).getProcessEngineConfiguration()).getCommandExecutorTxRequired();
+    }
+}
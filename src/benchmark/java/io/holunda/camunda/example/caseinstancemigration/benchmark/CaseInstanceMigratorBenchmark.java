@@ -0,0 +1,75 @@
+package io.holunda.camunda.example.caseinstancemigration.benchmark;
+
+import com.google.common.collect.ImmutableList;
+import io.holunda.camunda.example.caseinstancemigration.migration.migrator.CaseInstanceMigrator;
+import io.holunda.camunda.example.caseinstancemigration.migration.migrator.TaskMigrator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of migrating a single case instance and of migrating the tasks of a single case instance. Every invocation
+ * gets a case instance still on an old case definition version: every iteration deploys a new version the case
+ * instances are migrated to, and once all of them were handed out, another one is deployed outside the measured time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CaseInstanceMigratorBenchmark {
+
+    private BenchmarkContext context;
+
+    private CaseInstanceMigrator migrator;
+
+    private TaskMigrator taskMigrator;
+
+    private String targetCaseDefId;
+
+    private int next;
+
+    private String caseInstanceId;
+
+    @Setup(Level.Iteration)
+    public void deployNewVersion(BenchmarkContext context) {
+        this.context = context;
+        migrator = context.getBean(CaseInstanceMigrator.class);
+        taskMigrator = context.getBean(TaskMigrator.class);
+        targetCaseDefId = context.population.deploy().getId();
+        next = 0;
+    }
+
+    @Setup(Level.Invocation)
+    public void nextStaleCaseInstance() {
+        if (next == context.caseInstanceIds.size()) {
+            targetCaseDefId = context.population.deploy().getId();
+            next = 0;
+        }
+        caseInstanceId = context.caseInstanceIds.get(next++);
+    }
+
+    @Benchmark
+    public void migrateOneCaseInstance() {
+        migrator.migrateOneCaseInstance(caseInstanceId, targetCaseDefId);
+    }
+
+    @Benchmark
+    public void migrateAllTasksForCaseInstance() {
+        context.getCommandExecutorTxRequiresNew().execute(commandContext -> {
+            taskMigrator.migrateAllTasksForCaseInstances(ImmutableList.of(caseInstanceId), targetCaseDefId);
+            return null;
+        });
+    }
+}
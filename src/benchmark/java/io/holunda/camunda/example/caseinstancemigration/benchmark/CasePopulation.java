@@ -0,0 +1,107 @@
+package io.holunda.camunda.example.caseinstancemigration.benchmark;
+
+import com.google.common.collect.ImmutableList;
+import org.camunda.bpm.engine.CaseService;
+import org.camunda.bpm.engine.RepositoryService;
+import org.camunda.bpm.engine.repository.CaseDefinition;
+import org.camunda.bpm.model.cmmn.Cmmn;
+import org.camunda.bpm.model.cmmn.CmmnModelInstance;
+import org.camunda.bpm.model.cmmn.instance.*;
+import org.springframework.util.Assert;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Generates a synthetic case model and population of case instances. Every case instance has
+ * {@code executionsPerInstance} plan item executions, {@code tasksPerInstance} of them are active human tasks, the
+ * rest are enabled human tasks waiting for manual activation (so without a task).
+ */
+public class CasePopulation {
+
+    public static final String CASE_KEY = "benchmark_case";
+
+    private final RepositoryService repositoryService;
+
+    private final CaseService caseService;
+
+    private final int executionsPerInstance;
+
+    private final int tasksPerInstance;
+
+    private int additionalActivities = 0;
+
+    public CasePopulation(RepositoryService repositoryService, CaseService caseService, int executionsPerInstance, int tasksPerInstance) {
+        Assert.isTrue(tasksPerInstance <= executionsPerInstance, "tasksPerInstance must not exceed executionsPerInstance");
+        this.repositoryService = repositoryService;
+        this.caseService = caseService;
+        this.executionsPerInstance = executionsPerInstance;
+        this.tasksPerInstance = tasksPerInstance;
+    }
+
+    /**
+     * Deploys a new version of the case model.
+     *
+     * @return the new latest case definition.
+     */
+    public CaseDefinition deploy() {
+        repositoryService.createDeployment().addModelInstance("benchmark/" + CASE_KEY + ".cmmn", createModel()).deploy();
+
+        return repositoryService.createCaseDefinitionQuery().caseDefinitionKey(CASE_KEY).latestVersion().singleResult();
+    }
+
+    /**
+     * Deploys a new version of the case model with one more activity than the previous one.
+     */
+    public CaseDefinition deployWithAdditionalActivity() {
+        additionalActivities++;
+        return deploy();
+    }
+
+    public List<String> createCaseInstances(int count) {
+        return ImmutableList.copyOf(IntStream.range(0, count)
+                .mapToObj(i -> caseService.createCaseInstanceByKey(CASE_KEY).getCaseInstanceId())
+                .collect(Collectors.toList()));
+    }
+
+    private CmmnModelInstance createModel() {
+        CmmnModelInstance model = Cmmn.createEmptyModel();
+
+        Definitions definitions = model.newInstance(Definitions.class);
+        definitions.setTargetNamespace("http://camunda.org/examples");
+        model.setDefinitions(definitions);
+
+        Case caseElement = model.newInstance(Case.class);
+        caseElement.setId(CASE_KEY);
+        definitions.addChildElement(caseElement);
+
+        CasePlanModel casePlanModel = model.newInstance(CasePlanModel.class);
+        casePlanModel.setId(CASE_KEY + "_case");
+        caseElement.addChildElement(casePlanModel);
+
+        IntStream.range(0, tasksPerInstance).forEach(i -> addHumanTask(model, casePlanModel, "task_" + i, false));
+        IntStream.range(0, executionsPerInstance - tasksPerInstance).forEach(i -> addHumanTask(model, casePlanModel, "enabled_" + i, true));
+        IntStream.range(0, additionalActivities).forEach(i -> addHumanTask(model, casePlanModel, "additional_" + i, true));
+
+        Cmmn.validateModel(model);
+        return model;
+    }
+
+    private static void addHumanTask(CmmnModelInstance model, CasePlanModel casePlanModel, String id, boolean manualActivation) {
+        HumanTask humanTask = model.newInstance(HumanTask.class);
+        humanTask.setId(id + "_task");
+        casePlanModel.addChildElement(humanTask);
+
+        PlanItem planItem = model.newInstance(PlanItem.class);
+        planItem.setId(id);
+        casePlanModel.addChildElement(planItem);
+        planItem.setDefinition(humanTask);
+
+        if (manualActivation) {
+            ItemControl itemControl = model.newInstance(ItemControl.class);
+            itemControl.setManualActivationRule(model.newInstance(ManualActivationRule.class));
+            planItem.setItemControl(itemControl);
+        }
+    }
+}
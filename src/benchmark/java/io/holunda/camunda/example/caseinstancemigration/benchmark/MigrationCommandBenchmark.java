@@ -0,0 +1,64 @@
+package io.holunda.camunda.example.caseinstancemigration.benchmark;
+
+import io.holunda.camunda.example.caseinstancemigration.migration.command.AddNewActivitiesCmd;
+import io.holunda.camunda.example.caseinstancemigration.migration.command.MigrateCaseInstanceVersionCmd;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Duration of a whole migration run over the population, as it would take in a maintenance window. Every invocation
+ * starts from a population that is completely stale.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MigrationCommandBenchmark {
+
+    /**
+     * All case instances are on an old case definition version.
+     */
+    @State(Scope.Benchmark)
+    public static class StaleCaseInstances {
+
+        @Setup(Level.Invocation)
+        public void deployNewVersion(BenchmarkContext context) {
+            context.population.deploy();
+        }
+    }
+
+    /**
+     * All case instances are migrated to a new case definition version with an activity they do not have yet.
+     */
+    @State(Scope.Benchmark)
+    public static class CaseInstancesMissingActivities {
+
+        @Setup(Level.Invocation)
+        public void deployAndMigrateToNewVersion(BenchmarkContext context) {
+            context.population.deployWithAdditionalActivity();
+            context.getCommandExecutorTxRequired().execute(new MigrateCaseInstanceVersionCmd(CasePopulation.CASE_KEY, context.ctx));
+        }
+    }
+
+    @Benchmark
+    public void migrateCaseInstanceVersion(BenchmarkContext context, StaleCaseInstances staleCaseInstances) {
+        context.getCommandExecutorTxRequired().execute(new MigrateCaseInstanceVersionCmd(CasePopulation.CASE_KEY, context.ctx));
+    }
+
+    @Benchmark
+    public void addNewActivities(BenchmarkContext context, CaseInstancesMissingActivities caseInstancesMissingActivities) {
+        context.getCommandExecutorTxRequired().execute(new AddNewActivitiesCmd(CasePopulation.CASE_KEY, context.ctx));
+    }
+}
@@ -0,0 +1,595 @@
+package io.holunda.camunda.example.caseinstancemigration.migration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tuning settings for case instance migration, bound from {@code camunda.bpm.migration.*}.
+ */
+@Component
+@ConfigurationProperties(prefix = "camunda.bpm.migration")
+public class MigrationProperties {
+
+    /**
+     * Keys of the case definitions whose case instances are migrated to the latest version.
+     */
+    private List<String> caseDefinitionKeys = new ArrayList<>();
+
+    /**
+     * Regular expression selecting further case definition keys to migrate among the deployed ones.
+     */
+    private String caseDefinitionKeyPattern;
+
+    /**
+     * Rewrite case definition ids with set-based UPDATE statements instead of saving every entity.
+     * Only used if no {@link io.holunda.camunda.example.caseinstancemigration.migration.migrator.steps.CaseExecutionBatchMigrationStep}
+     * requires to see the single executions.
+     */
+    private boolean bulkUpdate = false;
+
+    /**
+     * Number of case instances rewritten by one bulk UPDATE chunk.
+     */
+    private int bulkChunkSize = 500;
+
+    /**
+     * Number of case instance ids fetched per page while streaming the case instances to migrate.
+     */
+    private int pageSize = 500;
+
+    /**
+     * Number of case instances migrated within one transaction. If a chunk fails, it is bisected and the halves are
+     * retried until the failing case instances are isolated.
+     */
+    private int commitInterval = 1;
+
+    /**
+     * Resume an unfinished migration run from its last checkpoint in the {@code MIGRATION_PROGRESS} table instead of
+     * starting over.
+     */
+    private boolean resume = true;
+
+    /**
+     * Interval in seconds in which migrated chunks are summarized in a single INFO line. {@code 0} logs one line per
+     * committed chunk. Per-entity detail is only logged at DEBUG.
+     */
+    private int summaryLogInterval = 0;
+
+    /**
+     * Only plan the migration on startup and log what it would touch, without writing anything.
+     */
+    private boolean dryRun = false;
+
+    /**
+     * Per case definition key: activity ids of older versions mapped to the renamed activity ids of the latest version.
+     * Executions and tasks are rewritten in the same pass as their case definition id. Mapped ids not contained in a
+     * source version are ignored, mapped ids missing in the target version fail the migration.
+     */
+    private Map<String, Map<String, String>> activityIdMappings = new HashMap<>();
+
+    private final Parallel parallel = new Parallel();
+
+    private final Background background = new Background();
+
+    private final Orchestration orchestration = new Orchestration();
+
+    private final Retry retry = new Retry();
+
+    private final Sharding sharding = new Sharding();
+
+    private final Lazy lazy = new Lazy();
+
+    private final Throttle throttle = new Throttle();
+
+    public List<String> getCaseDefinitionKeys() {
+        return caseDefinitionKeys;
+    }
+
+    public void setCaseDefinitionKeys(List<String> caseDefinitionKeys) {
+        this.caseDefinitionKeys = caseDefinitionKeys;
+    }
+
+    public String getCaseDefinitionKeyPattern() {
+        return caseDefinitionKeyPattern;
+    }
+
+    public void setCaseDefinitionKeyPattern(String caseDefinitionKeyPattern) {
+        this.caseDefinitionKeyPattern = caseDefinitionKeyPattern;
+    }
+
+    public boolean isBulkUpdate() {
+        return bulkUpdate;
+    }
+
+    public void setBulkUpdate(boolean bulkUpdate) {
+        this.bulkUpdate = bulkUpdate;
+    }
+
+    public int getBulkChunkSize() {
+        return bulkChunkSize;
+    }
+
+    public void setBulkChunkSize(int bulkChunkSize) {
+        this.bulkChunkSize = bulkChunkSize;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public int getCommitInterval() {
+        return commitInterval;
+    }
+
+    public void setCommitInterval(int commitInterval) {
+        this.commitInterval = commitInterval;
+    }
+
+    public int getSummaryLogInterval() {
+        return summaryLogInterval;
+    }
+
+    public void setSummaryLogInterval(int summaryLogInterval) {
+        this.summaryLogInterval = summaryLogInterval;
+    }
+
+    public boolean isDryRun() {
+        return dryRun;
+    }
+
+    public void setDryRun(boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    public Map<String, Map<String, String>> getActivityIdMappings() {
+        return activityIdMappings;
+    }
+
+    public void setActivityIdMappings(Map<String, Map<String, String>> activityIdMappings) {
+        this.activityIdMappings = activityIdMappings;
+    }
+
+    public boolean isResume() {
+        return resume;
+    }
+
+    public void setResume(boolean resume) {
+        this.resume = resume;
+    }
+
+    public Parallel getParallel() {
+        return parallel;
+    }
+
+    public Background getBackground() {
+        return background;
+    }
+
+    public Orchestration getOrchestration() {
+        return orchestration;
+    }
+
+    public Retry getRetry() {
+        return retry;
+    }
+
+    public Sharding getSharding() {
+        return sharding;
+    }
+
+    public Lazy getLazy() {
+        return lazy;
+    }
+
+    public Throttle getThrottle() {
+        return throttle;
+    }
+
+    /**
+     * How pages of case instances are handed over to the migration worker pool if its queue is full.
+     */
+    public enum Backpressure {
+        /**
+         * Block the producing thread until the queue has room again.
+         */
+        BLOCK,
+        /**
+         * Migrate the page on the producing thread.
+         */
+        CALLER_RUNS
+    }
+
+    public static class Parallel {
+
+        /**
+         * Migrate pages of case instances on a worker pool instead of the calling thread.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Number of worker threads, each of them uses its own transaction and database connection.
+         */
+        private int poolSize = 4;
+
+        /**
+         * Number of pages waiting for a free worker.
+         */
+        private int queueCapacity = 16;
+
+        private Backpressure backpressure = Backpressure.BLOCK;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getPoolSize() {
+            return poolSize;
+        }
+
+        public void setPoolSize(int poolSize) {
+            this.poolSize = poolSize;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public Backpressure getBackpressure() {
+            return backpressure;
+        }
+
+        public void setBackpressure(Backpressure backpressure) {
+            this.backpressure = backpressure;
+        }
+    }
+
+    public static class Background {
+
+        /**
+         * Run the migration on startup on a dedicated thread instead of within the deployment, so startup does not
+         * wait for it.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Report the application as out of service in its health until the background migration is completed.
+         */
+        private boolean readinessGate = false;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public boolean isReadinessGate() {
+            return readinessGate;
+        }
+
+        public void setReadinessGate(boolean readinessGate) {
+            this.readinessGate = readinessGate;
+        }
+    }
+
+    public static class Orchestration {
+
+        /**
+         * Number of case definition keys migrated concurrently.
+         */
+        private int concurrency = 1;
+
+        /**
+         * Maximum number of database connections the migration may hold at once, {@code 0} for no limit. Each key
+         * migrated concurrently holds two connections (its command and its current chunk), the worker pool one per
+         * thread, so the concurrency is reduced to fit.
+         */
+        private int connectionBudget = 0;
+
+        public int getConcurrency() {
+            return concurrency;
+        }
+
+        public void setConcurrency(int concurrency) {
+            this.concurrency = concurrency;
+        }
+
+        public int getConnectionBudget() {
+            return connectionBudget;
+        }
+
+        public void setConnectionBudget(int connectionBudget) {
+            this.connectionBudget = connectionBudget;
+        }
+    }
+
+    public static class Retry {
+
+        /**
+         * Retry case instances that failed on an optimistic lock conflict with concurrent engine activity after the main
+         * pass over their case definition, instead of dropping them.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Number of retry rounds before a case instance is reported as failed.
+         */
+        private int maxAttempts = 3;
+
+        /**
+         * Backoff in milliseconds before the first retry round, doubled every round. Each wait is a random duration up to
+         * the backoff, so retries do not collide with the same engine activity again.
+         */
+        private long initialBackoff = 100;
+
+        /**
+         * Upper bound of the backoff in milliseconds.
+         */
+        private long maxBackoff = 5000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        public void setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+
+        public long getInitialBackoff() {
+            return initialBackoff;
+        }
+
+        public void setInitialBackoff(long initialBackoff) {
+            this.initialBackoff = initialBackoff;
+        }
+
+        public long getMaxBackoff() {
+            return maxBackoff;
+        }
+
+        public void setMaxBackoff(long maxBackoff) {
+            this.maxBackoff = maxBackoff;
+        }
+    }
+
+    public static class Sharding {
+
+        /**
+         * Share the migration between all nodes running it: the case instances are split into partitions, ranges of
+         * case instance ids, leased from the {@code MIGRATION_PARTITION_LEASE} table, so every case instance is
+         * migrated by one node only.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Number of partitions of the case instance ids per target case definition, each about the same number of case
+         * instances. Fixed by the first node starting the migration to a target case definition; fewer if there are
+         * fewer case instances.
+         */
+        private int partitions = 16;
+
+        /**
+         * Owner recorded on the leases of this node, generated if not set.
+         */
+        private String nodeId;
+
+        /**
+         * Duration in milliseconds a lease is valid without a heartbeat, before other nodes may steal the partition.
+         */
+        private long leaseDuration = 60000;
+
+        /**
+         * Interval in milliseconds in which held leases are renewed and partitions of other nodes are polled for
+         * expiry. Should be well below the lease duration.
+         */
+        private long heartbeatInterval = 10000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getPartitions() {
+            return partitions;
+        }
+
+        public void setPartitions(int partitions) {
+            this.partitions = partitions;
+        }
+
+        public String getNodeId() {
+            return nodeId;
+        }
+
+        public void setNodeId(String nodeId) {
+            this.nodeId = nodeId;
+        }
+
+        public long getLeaseDuration() {
+            return leaseDuration;
+        }
+
+        public void setLeaseDuration(long leaseDuration) {
+            this.leaseDuration = leaseDuration;
+        }
+
+        public long getHeartbeatInterval() {
+            return heartbeatInterval;
+        }
+
+        public void setHeartbeatInterval(long heartbeatInterval) {
+            this.heartbeatInterval = heartbeatInterval;
+        }
+    }
+
+    public static class Lazy {
+
+        /**
+         * Migrate a case instance on a stale case definition right before a command touches it (completing one of its
+         * tasks, starting or completing one of its executions, setting variables), instead of migrating all case
+         * instances up front. On startup, a sweeper migrates the case instances not touched in the meantime. The engine
+         * plugin checking the commands is only registered if enabled on startup.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Delay in milliseconds after startup before the sweeper starts migrating the remaining case instances on the
+         * background thread.
+         */
+        private long sweeperDelay = 60000;
+
+        /**
+         * Milliseconds the latest case definition of a key is cached. Deployments on this node evict it at once, the
+         * expiry only matters for deployments by other nodes.
+         */
+        private long latestDefinitionTtl = 60000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getSweeperDelay() {
+            return sweeperDelay;
+        }
+
+        public void setSweeperDelay(long sweeperDelay) {
+            this.sweeperDelay = sweeperDelay;
+        }
+
+        public long getLatestDefinitionTtl() {
+            return latestDefinitionTtl;
+        }
+
+        public void setLatestDefinitionTtl(long latestDefinitionTtl) {
+            this.latestDefinitionTtl = latestDefinitionTtl;
+        }
+    }
+
+    public static class Throttle {
+
+        /**
+         * Limit the rate of the chunked migration (and the bulk migration) to case instances per second, adapted to
+         * the observed database load, so the migration can run alongside user traffic.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Case instances per second the rate starts at and never exceeds.
+         */
+        private double maxRate = 100;
+
+        /**
+         * Case instances per second the rate never drops below.
+         */
+        private double minRate = 1;
+
+        /**
+         * Milliseconds a chunk may take to migrate and commit before the rate is reduced.
+         */
+        private long commitLatencyThreshold = 500;
+
+        /**
+         * Number of threads waiting for a pooled database connection above which the rate is reduced.
+         */
+        private int connectionWaitThreshold = 0;
+
+        /**
+         * Case instances per second the rate is increased by after every chunk migrated without exceeding a threshold.
+         */
+        private double increaseStep = 5;
+
+        /**
+         * Factor the rate is multiplied with after a chunk exceeding a threshold.
+         */
+        private double decreaseFactor = 0.5;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public double getMaxRate() {
+            return maxRate;
+        }
+
+        public void setMaxRate(double maxRate) {
+            this.maxRate = maxRate;
+        }
+
+        public double getMinRate() {
+            return minRate;
+        }
+
+        public void setMinRate(double minRate) {
+            this.minRate = minRate;
+        }
+
+        public long getCommitLatencyThreshold() {
+            return commitLatencyThreshold;
+        }
+
+        public void setCommitLatencyThreshold(long commitLatencyThreshold) {
+            this.commitLatencyThreshold = commitLatencyThreshold;
+        }
+
+        public int getConnectionWaitThreshold() {
+            return connectionWaitThreshold;
+        }
+
+        public void setConnectionWaitThreshold(int connectionWaitThreshold) {
+            this.connectionWaitThreshold = connectionWaitThreshold;
+        }
+
+        public double getIncreaseStep() {
+            return increaseStep;
+        }
+
+        public void setIncreaseStep(double increaseStep) {
+            this.increaseStep = increaseStep;
+        }
+
+        public double getDecreaseFactor() {
+            return decreaseFactor;
+        }
+
+        public void setDecreaseFactor(double decreaseFactor) {
+            this.decreaseFactor = decreaseFactor;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.application;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.holunda.camunda.example.caseinstancemigration.migration.MigrationProperties;
+import io.holunda.camunda.example.caseinstancemigration.migration.domain.MigrationProgress;
+import io.holunda.camunda.example.caseinstancemigration.migration.domain.MigrationProgressRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import javax.annotation.PreDestroy;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the migration on a dedicated thread of lowest priority, so application startup does not depend on the number of
+ * case instances to migrate, and keeps track of its state for health and actuator endpoint.
+ */
+@Component
+public class BackgroundCaseMigration {
+
+    public enum State {
+        /**
+         * No background migration is configured or started.
+         */
+        IDLE,
+        /**
+         * The background migration is configured to start after deployment.
+         */
+        PENDING,
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    private final CaseMigrationOrchestrator orchestrator;
+
+    private final MigrationProgressRepository migrationProgressRepository;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("case-migration-background-%d").setDaemon(true).setPriority(Thread.MIN_PRIORITY).build());
+
+    private volatile State state;
+
+    private volatile String runId;
+
+    private volatile Date startTime;
+
+    private volatile Date endTime;
+
+    private volatile String failure;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BackgroundCaseMigration.class);
+
+    public BackgroundCaseMigration(@Value("${camunda.bpm.migration.case-instance-migration-on-startup:false}") Boolean migrateOnStartup,
+                                   MigrationProperties properties,
+                                   CaseMigrationOrchestrator orchestrator,
+                                   MigrationProgressRepository migrationProgressRepository) {
+        this.orchestrator = orchestrator;
+        this.migrationProgressRepository = migrationProgressRepository;
+        this.state = migrateOnStartup && properties.getBackground().isEnabled() ? State.PENDING : State.IDLE;
+    }
+
+    /**
+     * Starts migrating the case instances of the configured case definition keys and adding new activities to them on
+     * the background thread.
+     */
+    public Future<?> start() {
+        return start(null);
+    }
+
+    /**
+     * Starts migrating the case instances of the given case definition keys and adding new activities to them on the
+     * background thread.
+     *
+     * @param caseDefinitionKeys keys to migrate, {@code null} for the configured ones.
+     */
+    public synchronized Future<?> start(final Collection<String> caseDefinitionKeys) {
+        Assert.state(state != State.RUNNING, "Background migration is already running");
+
+        final String currentRunId = begin(caseDefinitionKeys);
+        return executor.submit(() -> migrate(caseDefinitionKeys, currentRunId));
+    }
+
+    /**
+     * Starts migrating the case instances of the configured case definition keys after the delay. Used as the sweeper of
+     * lazy migration, finishing the case instances not touched since startup.
+     */
+    public synchronized Future<?> startAfter(final long delay) {
+        Assert.state(state != State.RUNNING, "Background migration is already running");
+
+        if (LOGGER.isInfoEnabled())
+            LOGGER.info(String.format("Starting background migration of the configured case definition keys in %d ms", delay));
+
+        state = State.PENDING;
+        return executor.schedule(() -> migrate(null, begin(null)), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized String begin(final Collection<String> caseDefinitionKeys) {
+        runId = UUID.randomUUID().toString();
+        startTime = new Date();
+        endTime = null;
+        failure = null;
+        state = State.RUNNING;
+
+        if (LOGGER.isInfoEnabled())
+            LOGGER.info(String.format("Starting background migration run '%s' of %s", runId, caseDefinitionKeys != null ? caseDefinitionKeys : "the configured case definition keys"));
+
+        return runId;
+    }
+
+    private void migrate(final Collection<String> caseDefinitionKeys, final String currentRunId) {
+        try {
+            if (caseDefinitionKeys != null) {
+                orchestrator.migrate(caseDefinitionKeys, currentRunId);
+            } else {
+                orchestrator.migrate(currentRunId);
+            }
+            state = State.COMPLETED;
+
+            if (LOGGER.isInfoEnabled())
+                LOGGER.info(String.format("Background migration run '%s' completed", currentRunId));
+        } catch (RuntimeException e) {
+            LOGGER.error(String.format("Exception during background migration run '%s'", currentRunId), e);
+            failure = e.getMessage();
+            state = State.FAILED;
+        } finally {
+            endTime = new Date();
+        }
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    public Date getStartTime() {
+        return startTime;
+    }
+
+    public Date getEndTime() {
+        return endTime;
+    }
+
+    public String getFailure() {
+        return failure;
+    }
+
+    /**
+     * @return progress of every case definition migrated by the current run, empty if no run was started.
+     */
+    public List<MigrationProgress> getProgress() {
+        if (runId == null) {
+            return ImmutableList.of();
+        }
+        return ImmutableList.copyOf(migrationProgressRepository.findByRunId(runId));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
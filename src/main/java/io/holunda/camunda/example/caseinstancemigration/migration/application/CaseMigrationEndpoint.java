@@ -0,0 +1,36 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.application;
+
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Actuator endpoint {@code /migration} exposing the background migration and the progress of every case definition
+ * migrated by its current run.
+ */
+@Component
+@ConfigurationProperties(prefix = "endpoints.migration")
+public class CaseMigrationEndpoint extends AbstractEndpoint<Map<String, Object>> {
+
+    private final BackgroundCaseMigration backgroundCaseMigration;
+
+    public CaseMigrationEndpoint(BackgroundCaseMigration backgroundCaseMigration) {
+        super("migration", false);
+        this.backgroundCaseMigration = backgroundCaseMigration;
+    }
+
+    @Override
+    public Map<String, Object> invoke() {
+        final Map<String, Object> result = new LinkedHashMap<>();
+        result.put("state", backgroundCaseMigration.getState());
+        result.put("runId", backgroundCaseMigration.getRunId());
+        result.put("startTime", backgroundCaseMigration.getStartTime());
+        result.put("endTime", backgroundCaseMigration.getEndTime());
+        result.put("failure", backgroundCaseMigration.getFailure());
+        result.put("progress", backgroundCaseMigration.getProgress());
+        return result;
+    }
+}
@@ -0,0 +1,57 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.application;
+
+import io.holunda.camunda.example.caseinstancemigration.migration.MigrationProperties;
+import io.holunda.camunda.example.caseinstancemigration.migration.domain.MigrationProgress;
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Publishes the state of the background migration. With the readiness gate enabled, the application is reported
+ * out of service until the background migration is completed. A failed migration keeps it out of service rather than
+ * down: the application itself works, only the case instances left behind need attention, so it must not be
+ * restarted for it.
+ */
+@Component
+public class CaseMigrationHealthIndicator extends AbstractHealthIndicator {
+
+    private final BackgroundCaseMigration backgroundCaseMigration;
+
+    private final MigrationProperties properties;
+
+    public CaseMigrationHealthIndicator(BackgroundCaseMigration backgroundCaseMigration,
+                                        MigrationProperties properties) {
+        this.backgroundCaseMigration = backgroundCaseMigration;
+        this.properties = properties;
+    }
+
+    @Override
+    protected void doHealthCheck(Health.Builder builder) {
+        final BackgroundCaseMigration.State state = backgroundCaseMigration.getState();
+
+        if (!properties.getBackground().isReadinessGate()) {
+            builder.up();
+        } else if (state == BackgroundCaseMigration.State.FAILED) {
+            builder.outOfService().withDetail("reason", "Background migration failed");
+        } else if (state == BackgroundCaseMigration.State.PENDING || state == BackgroundCaseMigration.State.RUNNING) {
+            builder.outOfService();
+        } else {
+            builder.up();
+        }
+
+        final List<MigrationProgress> progress = backgroundCaseMigration.getProgress();
+
+        builder.withDetail("state", state)
+                .withDetail("migrated", progress.stream().mapToLong(MigrationProgress::getMigrated).sum())
+                .withDetail("failed", progress.stream().mapToLong(MigrationProgress::getFailed).sum());
+
+        if (backgroundCaseMigration.getRunId() != null) {
+            builder.withDetail("runId", backgroundCaseMigration.getRunId());
+        }
+        if (backgroundCaseMigration.getFailure() != null) {
+            builder.withDetail("failure", backgroundCaseMigration.getFailure());
+        }
+    }
+}
@@ -1,44 +1,66 @@
 package io.holunda.camunda.example.caseinstancemigration.migration.application;
 
 
-import io.holunda.camunda.example.caseinstancemigration.migration.command.AddNewActivitiesCmd;
-import io.holunda.camunda.example.caseinstancemigration.migration.command.MigrateCaseInstanceVersionCmd;
-import org.camunda.bpm.engine.ProcessEngine;
-import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import io.holunda.camunda.example.caseinstancemigration.migration.MigrationProperties;
+import io.holunda.camunda.example.caseinstancemigration.migration.migrator.MigrationPlan;
+import io.holunda.camunda.example.caseinstancemigration.migration.migrator.MigrationPlanner;
 import org.camunda.bpm.spring.boot.starter.event.PostDeployEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.context.ApplicationContext;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
+import java.util.UUID;
+
 @Component
 public class CaseMigrationOnStartup {
 
     private Boolean migrateOnStartup;
 
-    private final ProcessEngine processEngine;
+    private final MigrationProperties properties;
+
+    private final BackgroundCaseMigration backgroundCaseMigration;
+
+    private final MigrationPlanner migrationPlanner;
 
-    private final ApplicationContext ctx;
+    private final CaseMigrationOrchestrator orchestrator;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(CaseMigrationOnStartup.class);
 
     public CaseMigrationOnStartup(@Value("${camunda.bpm.migration.case-instance-migration-on-startup:false}") Boolean migrateOnStartup,
-                                  ProcessEngine processEngine,
-                                  ApplicationContext ctx) {
+                                  MigrationProperties properties,
+                                  BackgroundCaseMigration backgroundCaseMigration,
+                                  MigrationPlanner migrationPlanner,
+                                  CaseMigrationOrchestrator orchestrator) {
         this.migrateOnStartup = migrateOnStartup;
-        this.processEngine = processEngine;
-        this.ctx = ctx;
+        this.properties = properties;
+        this.backgroundCaseMigration = backgroundCaseMigration;
+        this.migrationPlanner = migrationPlanner;
+        this.orchestrator = orchestrator;
     }
 
     @EventListener
     public void migrateOnStartup(PostDeployEvent event) {
-        if (migrateOnStartup) {
-            ((ProcessEngineConfigurationImpl) processEngine.getProcessEngineConfiguration()).getCommandExecutorTxRequired().execute(new MigrateCaseInstanceVersionCmd("myCaseDefinitionKey", ctx));
-            ((ProcessEngineConfigurationImpl) processEngine.getProcessEngineConfiguration()).getCommandExecutorTxRequired().execute(new AddNewActivitiesCmd("myCaseDefinitionKey", ctx));
+        if (migrateOnStartup && properties.isDryRun()) {
+            orchestrator.resolveConfiguredCaseDefinitions().keySet().forEach(key -> logPlan(migrationPlanner.plan(key)));
+        } else if (migrateOnStartup && properties.getLazy().isEnabled()) {
+            backgroundCaseMigration.startAfter(properties.getLazy().getSweeperDelay());
+        } else if (migrateOnStartup && properties.getBackground().isEnabled()) {
+            backgroundCaseMigration.start();
+        } else if (migrateOnStartup) {
+            orchestrator.migrate(UUID.randomUUID().toString());
         } else if (LOGGER.isInfoEnabled()) {
             LOGGER.info("CaseInstance migration on application startup is disabled");
         }
     }
+
+    private void logPlan(final MigrationPlan plan) {
+        if (LOGGER.isInfoEnabled()) {
+            plan.getSources().forEach(source -> LOGGER.info(String.format("Dry run: would migrate %d case instances with %d executions and %d tasks from '%s' to '%s'",
+                    source.getCaseInstances(), source.getExecutions(), source.getTasks(), source.getCaseDefinitionId(), plan.getTargetCaseDefinitionId())));
+            plan.getActivitiesToAdd().forEach((activityId, caseInstances) -> LOGGER.info(String.format("Dry run: would add activity '%s' to %d case instances",
+                    activityId, caseInstances)));
+        }
+    }
 }
@@ -0,0 +1,192 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.application;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.holunda.camunda.example.caseinstancemigration.migration.MigrationProperties;
+import io.holunda.camunda.example.caseinstancemigration.migration.command.AddNewActivitiesCmd;
+import io.holunda.camunda.example.caseinstancemigration.migration.command.MigrateCaseInstanceVersionCmd;
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.RepositoryService;
+import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.camunda.bpm.engine.impl.interceptor.CommandExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Migrates the case instances of several case definition keys to their latest versions. The latest versions are
+ * resolved with a single repository query, and independent keys are migrated concurrently within the configured
+ * concurrency and connection budget.
+ */
+@Component
+public class CaseMigrationOrchestrator {
+
+    private final MigrationProperties properties;
+
+    private final RepositoryService repositoryService;
+
+    private final ProcessEngine processEngine;
+
+    private final ApplicationContext ctx;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CaseMigrationOrchestrator.class);
+
+    public CaseMigrationOrchestrator(MigrationProperties properties,
+                                     RepositoryService repositoryService,
+                                     ProcessEngine processEngine,
+                                     ApplicationContext ctx) {
+        this.properties = properties;
+        this.repositoryService = repositoryService;
+        this.processEngine = processEngine;
+        this.ctx = ctx;
+    }
+
+    /**
+     * @return id of the latest case definition per configured key (or key matching the configured pattern), ordered
+     * by key.
+     */
+    public Map<String, String> resolveConfiguredCaseDefinitions() {
+        final Pattern pattern = properties.getCaseDefinitionKeyPattern() != null ? Pattern.compile(properties.getCaseDefinitionKeyPattern()) : null;
+
+        final Map<String, String> latestCaseDefIds = resolveLatestCaseDefinitionIds(key ->
+                properties.getCaseDefinitionKeys().contains(key) || pattern != null && pattern.matcher(key).matches());
+
+        assertAllResolved(properties.getCaseDefinitionKeys(), latestCaseDefIds);
+
+        return latestCaseDefIds;
+    }
+
+    /**
+     * @return id of the latest case definition per given key, ordered by key.
+     */
+    public Map<String, String> resolveCaseDefinitions(final Collection<String> caseDefinitionKeys) {
+        Assert.notNull(caseDefinitionKeys, "caseDefinitionKeys is missing");
+
+        final Map<String, String> latestCaseDefIds = resolveLatestCaseDefinitionIds(caseDefinitionKeys::contains);
+
+        assertAllResolved(caseDefinitionKeys, latestCaseDefIds);
+
+        return latestCaseDefIds;
+    }
+
+    /**
+     * Migrates the case instances of the configured keys and adds new activities to them.
+     */
+    public void migrate(final String runId) {
+        migrate(resolveConfiguredCaseDefinitions(), runId);
+    }
+
+    /**
+     * Migrates the case instances of the given keys and adds new activities to them.
+     */
+    public void migrate(final Collection<String> caseDefinitionKeys, final String runId) {
+        migrate(resolveCaseDefinitions(caseDefinitionKeys), runId);
+    }
+
+    private void migrate(final Map<String, String> latestCaseDefIds, final String runId) {
+        Assert.notNull(runId, "runId is missing");
+
+        if (latestCaseDefIds.isEmpty()) {
+            LOGGER.info("No case definition keys to migrate");
+            return;
+        }
+
+        final int concurrency = getConcurrency(latestCaseDefIds.size());
+
+        if (LOGGER.isInfoEnabled())
+            LOGGER.info(String.format("Migrating %d case definition keys with concurrency %d in run '%s'", latestCaseDefIds.size(), concurrency, runId));
+
+        final ExecutorService executor = Executors.newFixedThreadPool(concurrency,
+                new ThreadFactoryBuilder().setNameFormat("case-migration-key-%d").setDaemon(true).build());
+        try {
+            final Map<String, Future<?>> migrations = new LinkedHashMap<>();
+            latestCaseDefIds.forEach((key, latestCaseDefId) -> migrations.put(key, executor.submit(() -> migrateKey(key, latestCaseDefId, runId))));
+
+            final List<String> failedKeys = new ArrayList<>();
+            migrations.forEach((key, migration) -> {
+                if (!awaitMigration(key, migration)) {
+                    failedKeys.add(key);
+                }
+            });
+
+            if (!failedKeys.isEmpty()) {
+                throw new IllegalStateException(String.format("Migration of case definition keys %s failed", failedKeys));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void migrateKey(final String caseDefinitionKey, final String latestCaseDefId, final String runId) {
+        getCommandExecutor().execute(new MigrateCaseInstanceVersionCmd(caseDefinitionKey, latestCaseDefId, runId, ctx));
+        getCommandExecutor().execute(new AddNewActivitiesCmd(caseDefinitionKey, ctx));
+    }
+
+    private boolean awaitMigration(final String caseDefinitionKey, final Future<?> migration) {
+        try {
+            migration.get();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(String.format("Interrupted while migrating case definition key '%s'", caseDefinitionKey), e);
+        } catch (ExecutionException e) {
+            LOGGER.error(String.format("Exception during migration of case definition key '%s'", caseDefinitionKey), e.getCause());
+            return false;
+        }
+    }
+
+    /**
+     * Each key migrated concurrently holds two connections (its command and its current chunk), the worker pool one
+     * per thread. The configured concurrency is reduced to fit the connection budget, but is at least one.
+     */
+    private int getConcurrency(final int keys) {
+        final MigrationProperties.Orchestration orchestration = properties.getOrchestration();
+
+        int concurrency = Math.min(Math.max(1, orchestration.getConcurrency()), keys);
+
+        if (orchestration.getConnectionBudget() > 0) {
+            final int workerConnections = properties.getParallel().isEnabled() ? properties.getParallel().getPoolSize() : 0;
+            final int affordable = Math.max(1, (orchestration.getConnectionBudget() - workerConnections) / 2);
+            if (affordable < concurrency) {
+                LOGGER.warn(String.format("Reducing concurrency from %d to %d to fit the connection budget of %d", concurrency, affordable, orchestration.getConnectionBudget()));
+                concurrency = affordable;
+            }
+        }
+        return concurrency;
+    }
+
+    private Map<String, String> resolveLatestCaseDefinitionIds(final Predicate<String> keyFilter) {
+        final Map<String, String> latestCaseDefIds = new TreeMap<>();
+        repositoryService.createCaseDefinitionQuery().latestVersion().list().stream()
+                .filter(caseDefinition -> keyFilter.test(caseDefinition.getKey()))
+                .forEach(caseDefinition -> latestCaseDefIds.put(caseDefinition.getKey(), caseDefinition.getId()));
+        return ImmutableMap.copyOf(latestCaseDefIds);
+    }
+
+    private void assertAllResolved(final Collection<String> caseDefinitionKeys, final Map<String, String> latestCaseDefIds) {
+        caseDefinitionKeys.forEach(key -> {
+            if (!latestCaseDefIds.containsKey(key)) {
+                throw new IllegalStateException(String.format("Could not determine latest case model version of '%s'", key));
+            }
+        });
+    }
+
+    private CommandExecutor getCommandExecutor() {
+        return ((ProcessEngineConfigurationImpl) processEngine.getProcessEngineConfiguration()).getCommandExecutorTxRequired();
+    }
+}
@@ -0,0 +1,55 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.application;
+
+import io.holunda.camunda.example.caseinstancemigration.migration.MigrationProperties;
+import io.holunda.camunda.example.caseinstancemigration.migration.migrator.MigrationThrottle;
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Actuator endpoint {@code /migrationThrottle} exposing the current rate of the {@link MigrationThrottle} and its
+ * limits. The limits are changed by {@link CaseMigrationThrottleMvcEndpoint}.
+ */
+@Component
+@ConfigurationProperties(prefix = "endpoints.migration-throttle")
+public class CaseMigrationThrottleEndpoint extends AbstractEndpoint<Map<String, Object>> {
+
+    private final MigrationThrottle throttle;
+
+    private final MigrationProperties properties;
+
+    public CaseMigrationThrottleEndpoint(MigrationThrottle throttle,
+                                         MigrationProperties properties) {
+        super("migrationThrottle", true);
+        this.throttle = throttle;
+        this.properties = properties;
+    }
+
+    @Override
+    public Map<String, Object> invoke() {
+        final MigrationProperties.Throttle settings = properties.getThrottle();
+
+        final Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", settings.isEnabled());
+        result.put("rate", throttle.getRate());
+        result.put("minRate", settings.getMinRate());
+        result.put("maxRate", settings.getMaxRate());
+        result.put("commitLatencyThreshold", settings.getCommitLatencyThreshold());
+        result.put("connectionWaitThreshold", settings.getConnectionWaitThreshold());
+        result.put("connectionWaiters", throttle.getConnectionWaiters());
+        return result;
+    }
+
+    /**
+     * Changes the limits of the throttle, {@code null} keeps the current value.
+     *
+     * @return the endpoint state after the change.
+     */
+    public Map<String, Object> updateLimits(final Double minRate, final Double maxRate, final Long commitLatencyThreshold, final Integer connectionWaitThreshold) {
+        throttle.updateLimits(minRate, maxRate, commitLatencyThreshold, connectionWaitThreshold);
+        return invoke();
+    }
+}
@@ -0,0 +1,51 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.application;
+
+import org.springframework.boot.actuate.endpoint.mvc.ActuatorMediaTypes;
+import org.springframework.boot.actuate.endpoint.mvc.EndpointMvcAdapter;
+import org.springframework.boot.actuate.endpoint.mvc.HypermediaDisabled;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.Map;
+
+/**
+ * Adds {@code POST /migrationThrottle} to {@link CaseMigrationThrottleEndpoint}, changing the limits of the throttle
+ * at runtime, e.g. {@code {"maxRate": 20, "commitLatencyThreshold": 200}}. Limits left out keep their value.
+ */
+@Component
+public class CaseMigrationThrottleMvcEndpoint extends EndpointMvcAdapter {
+
+    private final CaseMigrationThrottleEndpoint delegate;
+
+    public CaseMigrationThrottleMvcEndpoint(CaseMigrationThrottleEndpoint delegate) {
+        super(delegate);
+        this.delegate = delegate;
+    }
+
+    @PostMapping(consumes = {ActuatorMediaTypes.APPLICATION_ACTUATOR_V1_JSON_VALUE, MediaType.APPLICATION_JSON_VALUE},
+            produces = {ActuatorMediaTypes.APPLICATION_ACTUATOR_V1_JSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    @ResponseBody
+    @HypermediaDisabled
+    public Object updateLimits(@RequestBody Map<String, Number> limits) {
+        if (!delegate.isEnabled()) {
+            return getDisabledResponse();
+        }
+        try {
+            final Number minRate = limits.get("minRate");
+            final Number maxRate = limits.get("maxRate");
+            final Number commitLatencyThreshold = limits.get("commitLatencyThreshold");
+            final Number connectionWaitThreshold = limits.get("connectionWaitThreshold");
+            return delegate.updateLimits(
+                    minRate != null ? minRate.doubleValue() : null,
+                    maxRate != null ? maxRate.doubleValue() : null,
+                    commitLatencyThreshold != null ? commitLatencyThreshold.longValue() : null,
+                    connectionWaitThreshold != null ? connectionWaitThreshold.intValue() : null);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+}
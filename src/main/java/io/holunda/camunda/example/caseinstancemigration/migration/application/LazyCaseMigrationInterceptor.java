@@ -0,0 +1,82 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.application;
+
+import io.holunda.camunda.example.caseinstancemigration.migration.MigrationProperties;
+import io.holunda.camunda.example.caseinstancemigration.migration.migrator.CaseInstanceMigrator;
+import io.holunda.camunda.example.caseinstancemigration.migration.migrator.MigrationMetrics;
+import org.camunda.bpm.engine.impl.interceptor.Command;
+import org.camunda.bpm.engine.impl.interceptor.CommandInterceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Runs before the command context and transaction are opened. Arms the {@link StaleCaseInstanceInterceptor} for a
+ * command touching a case instance; if that finds the case instance on a stale case definition, the case instance is
+ * migrated in its own transaction and the command executed again.
+ * <p>
+ * Commands nested in another command or joining a transaction of the caller are not checked, as retrying them is not
+ * possible; their case instances are left to the sweeper.
+ */
+public class LazyCaseMigrationInterceptor extends CommandInterceptor {
+
+    private final StaleCaseInstanceInterceptor staleCaseInstanceInterceptor;
+
+    private final MigrationProperties properties;
+
+    private final ApplicationContext ctx;
+
+    private final ThreadLocal<Boolean> executing = new ThreadLocal<>();
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LazyCaseMigrationInterceptor.class);
+
+    /**
+     * @param ctx to look up the migrator, which depends on the process engine being built when this is created.
+     */
+    public LazyCaseMigrationInterceptor(StaleCaseInstanceInterceptor staleCaseInstanceInterceptor, MigrationProperties properties, ApplicationContext ctx) {
+        this.staleCaseInstanceInterceptor = staleCaseInstanceInterceptor;
+        this.properties = properties;
+        this.ctx = ctx;
+    }
+
+    @Override
+    public <T> T execute(Command<T> command) {
+        if (!properties.getLazy().isEnabled()
+                || executing.get() != null
+                || !StaleCaseInstanceInterceptor.touchesCaseInstance(command)
+                || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return next.execute(command);
+        }
+
+        executing.set(Boolean.TRUE);
+        try {
+            staleCaseInstanceInterceptor.arm();
+            try {
+                return next.execute(command);
+            } catch (StaleCaseInstanceException e) {
+                migrate(e);
+            } finally {
+                staleCaseInstanceInterceptor.disarm();
+            }
+            return next.execute(command);
+        } finally {
+            executing.remove();
+        }
+    }
+
+    /**
+     * A failure (like a concurrent migration by the sweeper) is only logged, the command then runs on whatever case
+     * definition the case instance is on.
+     */
+    private void migrate(final StaleCaseInstanceException stale) {
+        LOGGER.debug("Migrating case instance '{}' to '{}' on access", stale.getCaseInstanceId(), stale.getLatestCaseDefinitionId());
+
+        try {
+            ctx.getBean(CaseInstanceMigrator.class).migrateOneCaseInstance(stale.getCaseInstanceId(), stale.getLatestCaseDefinitionId());
+            ctx.getBean(MigrationMetrics.class).caseInstancesMigrated(1);
+        } catch (RuntimeException e) {
+            LOGGER.warn(String.format("Exception during migration of case instance '%s' on access", stale.getCaseInstanceId()), e);
+            ctx.getBean(MigrationMetrics.class).caseInstancesFailed(1);
+        }
+    }
+}
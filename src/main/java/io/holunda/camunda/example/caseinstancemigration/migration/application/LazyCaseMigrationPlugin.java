@@ -0,0 +1,58 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.application;
+
+import io.holunda.camunda.example.caseinstancemigration.migration.MigrationProperties;
+import io.holunda.camunda.example.caseinstancemigration.migration.migrator.LatestCaseDefinitionCache;
+import org.camunda.bpm.engine.impl.cfg.AbstractProcessEnginePlugin;
+import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.camunda.bpm.engine.impl.cmmn.entity.repository.CaseDefinitionEntity;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Adds the interceptors of lazy migration (see {@link MigrationProperties.Lazy}) to the engine's command executor and a
+ * deployer evicting the latest case definitions of deployed keys from the {@link LatestCaseDefinitionCache}. Only
+ * registered if lazy migration is enabled on startup; disabling it later turns the interceptors into no-ops.
+ */
+@Component
+@ConditionalOnProperty(prefix = "camunda.bpm.migration.lazy", name = "enabled")
+public class LazyCaseMigrationPlugin extends AbstractProcessEnginePlugin {
+
+    private final LatestCaseDefinitionCache latestCaseDefinitionCache;
+
+    private final MigrationProperties properties;
+
+    private final ApplicationContext ctx;
+
+    public LazyCaseMigrationPlugin(LatestCaseDefinitionCache latestCaseDefinitionCache, MigrationProperties properties, ApplicationContext ctx) {
+        this.latestCaseDefinitionCache = latestCaseDefinitionCache;
+        this.properties = properties;
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void preInit(ProcessEngineConfigurationImpl processEngineConfiguration) {
+        final StaleCaseInstanceInterceptor staleCaseInstanceInterceptor = new StaleCaseInstanceInterceptor(latestCaseDefinitionCache);
+
+        processEngineConfiguration.setCustomPreCommandInterceptorsTxRequired(append(processEngineConfiguration.getCustomPreCommandInterceptorsTxRequired(),
+                new LazyCaseMigrationInterceptor(staleCaseInstanceInterceptor, properties, ctx)));
+        processEngineConfiguration.setCustomPostCommandInterceptorsTxRequired(append(processEngineConfiguration.getCustomPostCommandInterceptorsTxRequired(),
+                staleCaseInstanceInterceptor));
+        processEngineConfiguration.setCustomPostDeployers(append(processEngineConfiguration.getCustomPostDeployers(),
+                deployment -> {
+                    final List<CaseDefinitionEntity> caseDefinitions = deployment.getDeployedArtifacts(CaseDefinitionEntity.class);
+                    if (caseDefinitions != null) {
+                        caseDefinitions.forEach(caseDefinition -> latestCaseDefinitionCache.evict(caseDefinition.getKey()));
+                    }
+                }));
+    }
+
+    private static <T> List<T> append(final List<T> elements, final T element) {
+        final List<T> appended = elements != null ? new ArrayList<>(elements) : new ArrayList<>();
+        appended.add(element);
+        return appended;
+    }
+}
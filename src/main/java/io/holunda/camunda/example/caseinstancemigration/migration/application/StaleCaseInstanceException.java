@@ -0,0 +1,28 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.application;
+
+import org.camunda.bpm.engine.OptimisticLockingException;
+
+/**
+ * Thrown before a command touches a case instance on a stale case definition. Like any optimistic locking failure the
+ * command did not write anything and can be retried, here once the case instance is migrated.
+ */
+public class StaleCaseInstanceException extends OptimisticLockingException {
+
+    private final String caseInstanceId;
+
+    private final String latestCaseDefinitionId;
+
+    public StaleCaseInstanceException(String caseInstanceId, String caseDefinitionId, String latestCaseDefinitionId) {
+        super(String.format("Case instance '%s' is on case definition '%s' instead of the latest '%s'", caseInstanceId, caseDefinitionId, latestCaseDefinitionId));
+        this.caseInstanceId = caseInstanceId;
+        this.latestCaseDefinitionId = latestCaseDefinitionId;
+    }
+
+    public String getCaseInstanceId() {
+        return caseInstanceId;
+    }
+
+    public String getLatestCaseDefinitionId() {
+        return latestCaseDefinitionId;
+    }
+}
@@ -0,0 +1,134 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.application;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import io.holunda.camunda.example.caseinstancemigration.migration.migrator.LatestCaseDefinitionCache;
+import org.camunda.bpm.engine.impl.cmd.AbstractVariableCmd;
+import org.camunda.bpm.engine.impl.cmd.CompleteTaskCmd;
+import org.camunda.bpm.engine.impl.cmd.SetTaskVariablesCmd;
+import org.camunda.bpm.engine.impl.cmmn.cmd.CaseExecutionVariableCmd;
+import org.camunda.bpm.engine.impl.cmmn.entity.repository.CaseDefinitionEntity;
+import org.camunda.bpm.engine.impl.cmmn.entity.runtime.CaseExecutionEntity;
+import org.camunda.bpm.engine.impl.context.Context;
+import org.camunda.bpm.engine.impl.interceptor.Command;
+import org.camunda.bpm.engine.impl.interceptor.CommandContext;
+import org.camunda.bpm.engine.impl.interceptor.CommandInterceptor;
+import org.camunda.bpm.engine.impl.persistence.entity.TaskEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+
+/**
+ * Runs within the command context, right before a command touching a case instance, once armed by the
+ * {@link LazyCaseMigrationInterceptor}. Loads the task or case execution the command is about to load anyway, so it is
+ * served from the command context's entity cache afterwards, and throws a {@link StaleCaseInstanceException} if its
+ * case definition is older than the latest one of the key.
+ */
+public class StaleCaseInstanceInterceptor extends CommandInterceptor {
+
+    /**
+     * The fields of the engine's commands holding the ids, resolved on first use. A field missing in the engine version
+     * at hand resolves to null, the commands relying on it are then not checked.
+     */
+    private static final Supplier<Field> TASK_ID = Suppliers.memoize(() -> accessibleField(CompleteTaskCmd.class, "taskId"));
+
+    private static final Supplier<Field> VARIABLE_ENTITY_ID = Suppliers.memoize(() -> accessibleField(AbstractVariableCmd.class, "entityId"));
+
+    private static final Supplier<Field> CASE_EXECUTION_ID = Suppliers.memoize(() -> accessibleField(CaseExecutionVariableCmd.class, "caseExecutionId"));
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StaleCaseInstanceInterceptor.class);
+
+    private final LatestCaseDefinitionCache latestCaseDefinitionCache;
+
+    private final ThreadLocal<Boolean> armed = new ThreadLocal<>();
+
+    public StaleCaseInstanceInterceptor(LatestCaseDefinitionCache latestCaseDefinitionCache) {
+        this.latestCaseDefinitionCache = latestCaseDefinitionCache;
+    }
+
+    /**
+     * @return true for the commands completing a task, setting task variables or changing a case execution (manual
+     * start, completion, variables).
+     */
+    static boolean touchesCaseInstance(final Command<?> command) {
+        return command instanceof CompleteTaskCmd || command instanceof SetTaskVariablesCmd || command instanceof CaseExecutionVariableCmd;
+    }
+
+    /**
+     * Checks the next command executed on this thread, nested commands of it are not checked.
+     */
+    void arm() {
+        armed.set(Boolean.TRUE);
+    }
+
+    void disarm() {
+        armed.remove();
+    }
+
+    @Override
+    public <T> T execute(Command<T> command) {
+        if (armed.get() != null) {
+            disarm();
+            checkCaseInstance(command);
+        }
+        return next.execute(command);
+    }
+
+    private void checkCaseInstance(final Command<?> command) {
+        final CommandContext commandContext = Context.getCommandContext();
+
+        final String caseInstanceId;
+        final String caseDefinitionId;
+        if (command instanceof CaseExecutionVariableCmd) {
+            final String caseExecutionId = readField(CASE_EXECUTION_ID.get(), command);
+            if (caseExecutionId == null) {
+                return;
+            }
+            final CaseExecutionEntity caseExecution = commandContext.getCaseExecutionManager().findCaseExecutionById(caseExecutionId);
+            if (caseExecution == null) {
+                return;
+            }
+            caseInstanceId = caseExecution.getCaseInstanceId();
+            caseDefinitionId = caseExecution.getCaseDefinitionId();
+        } else {
+            final String taskId = readField(command instanceof CompleteTaskCmd ? TASK_ID.get() : VARIABLE_ENTITY_ID.get(), command);
+            if (taskId == null) {
+                return;
+            }
+            final TaskEntity task = commandContext.getTaskManager().findTaskById(taskId);
+            if (task == null || task.getCaseDefinitionId() == null) {
+                return;
+            }
+            caseInstanceId = task.getCaseInstanceId();
+            caseDefinitionId = task.getCaseDefinitionId();
+        }
+
+        final CaseDefinitionEntity caseDefinition = commandContext.getProcessEngineConfiguration().getDeploymentCache().findDeployedCaseDefinitionById(caseDefinitionId);
+        final CaseDefinitionEntity latestCaseDefinition = latestCaseDefinitionCache.get(caseDefinition.getKey());
+
+        if (latestCaseDefinition != null && caseDefinition.getVersion() < latestCaseDefinition.getVersion()) {
+            throw new StaleCaseInstanceException(caseInstanceId, caseDefinitionId, latestCaseDefinition.getId());
+        }
+    }
+
+    /**
+     * @return null if the field could not be resolved.
+     */
+    private static String readField(final Field field, final Command<?> command) {
+        return field != null ? (String) ReflectionUtils.getField(field, command) : null;
+    }
+
+    private static Field accessibleField(final Class<?> type, final String name) {
+        final Field field = ReflectionUtils.findField(type, name, String.class);
+
+        if (field == null) {
+            LOGGER.warn(String.format("Field '%s' of '%s' not found, case instances touched by this command are not migrated lazily", name, type.getName()));
+            return null;
+        }
+
+        ReflectionUtils.makeAccessible(field);
+        return field;
+    }
+}
@@ -1,30 +1,50 @@
 package io.holunda.camunda.example.caseinstancemigration.migration.command;
 
-import org.camunda.bpm.engine.CaseService;
+import com.google.common.collect.ImmutableList;
+import io.holunda.camunda.example.caseinstancemigration.migration.MigrationProperties;
+import io.holunda.camunda.example.caseinstancemigration.migration.domain.CamundaCaseExecutionRepository;
+import io.holunda.camunda.example.caseinstancemigration.migration.domain.CaseInstanceIdCursor;
+import io.holunda.camunda.example.caseinstancemigration.migration.migrator.CaseDefinitionActivityIndex;
+import io.holunda.camunda.example.caseinstancemigration.migration.migrator.CaseInstanceActivityAdder;
+import io.holunda.camunda.example.caseinstancemigration.migration.migrator.CaseInstanceMigrationExecutor;
+import io.holunda.camunda.example.caseinstancemigration.migration.migrator.MigrationMetrics;
+import io.holunda.camunda.example.caseinstancemigration.migration.migrator.MigrationSummaryLog;
 import org.camunda.bpm.engine.RepositoryService;
 import org.camunda.bpm.engine.impl.cmmn.entity.repository.CaseDefinitionEntity;
-import org.camunda.bpm.engine.impl.cmmn.entity.runtime.CaseExecutionEntity;
-import org.camunda.bpm.engine.impl.cmmn.execution.CmmnExecution;
-import org.camunda.bpm.engine.impl.cmmn.model.CmmnActivity;
 import org.camunda.bpm.engine.impl.interceptor.Command;
 import org.camunda.bpm.engine.impl.interceptor.CommandContext;
-import org.camunda.bpm.engine.runtime.CaseInstance;
+import org.camunda.bpm.engine.repository.ResourceDefinition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContext;
 import org.springframework.util.Assert;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 public class AddNewActivitiesCmd implements Command<Void> {
 
     private final String caseDefinitionKey;
 
-    private final CaseService caseService;
-
     private final RepositoryService repositoryService;
 
+    private final CaseInstanceActivityAdder activityAdder;
+
+    private final CaseInstanceMigrationExecutor executor;
+
+    private final CamundaCaseExecutionRepository camundaCaseExecutionRepository;
+
+    private final MigrationProperties properties;
+
+    private final MigrationMetrics metrics;
+
+    private final MigrationSummaryLog summaryLog;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(AddNewActivitiesCmd.class);
 
     public AddNewActivitiesCmd(final String caseDefinitionKey, final ApplicationContext ctx) {
@@ -33,28 +53,118 @@ public class AddNewActivitiesCmd implements Command<Void> {
         this.caseDefinitionKey = caseDefinitionKey;
 
         repositoryService = ctx.getBean(RepositoryService.class);
-        caseService = ctx.getBean(CaseService.class);
+        activityAdder = ctx.getBean(CaseInstanceActivityAdder.class);
+        executor = ctx.getBean(CaseInstanceMigrationExecutor.class);
+        camundaCaseExecutionRepository = ctx.getBean(CamundaCaseExecutionRepository.class);
+        properties = ctx.getBean(MigrationProperties.class);
+        metrics = ctx.getBean(MigrationMetrics.class);
+        summaryLog = ctx.getBean(MigrationSummaryLog.class);
     }
 
     @Override
     public Void execute(CommandContext commandContext) {
-        caseService.createCaseInstanceQuery().caseDefinitionKey(caseDefinitionKey).list().forEach(this::addNewActivitiesToCaseInstance);
+        indexActivitiesOfAllCaseDefinitions(caseDefinitionKey).forEach(this::addNewActivitiesToCaseInstancesOfDefinition);
+
+        summaryLog.flush();
 
         return null;
     }
 
-    private void addNewActivitiesToCaseInstance(final CaseInstance caseInstance) {
-        Assert.notNull(caseInstance, "caseInstance is missing");
+    /**
+     * Computes the activity index once for the whole run, but only of the case definitions of the key that still have
+     * case instances; after a migration that is usually the latest one alone.
+     */
+    private List<CaseDefinitionActivityIndex> indexActivitiesOfAllCaseDefinitions(final String caseDefinitionKey) {
+        Assert.notNull(caseDefinitionKey, "caseDefinitionKey is missing");
+
+        final List<String> caseDefinitionIds = ImmutableList.copyOf(repositoryService.createCaseDefinitionQuery().caseDefinitionKey(caseDefinitionKey)
+                .orderByCaseDefinitionVersion().asc().list().stream()
+                .map(ResourceDefinition::getId)
+                .iterator());
+
+        if (caseDefinitionIds.isEmpty()) {
+            return ImmutableList.of();
+        }
+
+        final Set<String> withCaseInstances = new HashSet<>();
+        camundaCaseExecutionRepository.countCaseInstancesByCaseDefinitionIds(caseDefinitionIds).forEach(row -> withCaseInstances.add((String) row[0]));
+
+        LOGGER.debug("Indexing activities of {} of {} case definitions of '{}' having case instances", withCaseInstances.size(), caseDefinitionIds.size(), caseDefinitionKey);
+
+        return ImmutableList.copyOf(caseDefinitionIds.stream()
+                .filter(withCaseInstances::contains)
+                .map(caseDefinitionId -> CaseDefinitionActivityIndex.of((CaseDefinitionEntity) repositoryService.getCaseDefinition(caseDefinitionId)))
+                .iterator());
+    }
+
+    /**
+     * Streams the case instances of the definition page by page and adds the new activities to those missing any, in
+     * chunks committed separately and optionally on the worker pool.
+     */
+    private void addNewActivitiesToCaseInstancesOfDefinition(final CaseDefinitionActivityIndex activityIndex) {
+        Assert.notNull(activityIndex, "activityIndex is missing");
+
+        final CaseInstanceIdCursor cursor = new CaseInstanceIdCursor(camundaCaseExecutionRepository, activityIndex.getCaseDefinitionId(), properties.getPageSize());
+
+        final Consumer<List<String>> chunkOperation = chunk -> activityAdder.addNewActivities(chunk, activityIndex);
+
+        final List<PendingPartition> partitions = new ArrayList<>();
+
+        int found = 0;
+        int failed = 0;
+        while (cursor.hasNext()) {
+            final List<String> caseInstanceIds = activityAdder.findCaseInstancesMissingActivities(cursor.next(), activityIndex);
+            found += caseInstanceIds.size();
+
+            if (caseInstanceIds.isEmpty()) {
+                continue;
+            }
 
-        List<String> activityIds = ((CaseExecutionEntity) caseInstance).getCaseExecutions().stream().map(CaseExecutionEntity::getActivityId).collect(Collectors.toList());
+            if (LOGGER.isInfoEnabled())
+                LOGGER.info(String.format("Found %d case instances of '%s' missing activities", caseInstanceIds.size(), activityIndex.getCaseDefinitionId()));
+
+            if (executor.isParallel()) {
+                partitions.add(new PendingPartition(caseInstanceIds.size(), executor.submitPartition(caseInstanceIds, chunkOperation)));
+            } else {
+                failed += executor.migratePartition(caseInstanceIds, chunkOperation);
+            }
+        }
+
+        for (PendingPartition partition : partitions) {
+            failed += awaitPartition(partition, activityIndex.getCaseDefinitionId());
+        }
+
+        metrics.caseInstancesFailed(failed);
+        summaryLog.caseInstancesFailed(failed);
+
+        if (LOGGER.isInfoEnabled())
+            LOGGER.info(String.format("Added new activities to %d case instances of '%s', %d failed", found - failed, activityIndex.getCaseDefinitionId(), failed));
+    }
+
+    /**
+     * @return number of case instances of the partition that failed, all of them if the partition failed as a whole.
+     */
+    private int awaitPartition(final PendingPartition partition, final String caseDefinitionId) {
+        try {
+            return partition.failed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(String.format("Interrupted while adding new activities to case instances of '%s'", caseDefinitionId), e);
+        } catch (ExecutionException e) {
+            LOGGER.error(String.format("Exception while adding new activities to case instances of '%s'", caseDefinitionId), e.getCause());
+            return partition.size;
+        }
+    }
 
-        CaseDefinitionEntity caseDefinition = (CaseDefinitionEntity) repositoryService.getCaseDefinition(caseInstance.getCaseDefinitionId());
+    private static final class PendingPartition {
 
-        List<CmmnActivity> newActivities = caseDefinition.getActivities().get(0).getActivities().stream().filter(a -> !activityIds.contains(a.getId())).collect(Collectors.toList());
+        private final int size;
 
-        newActivities.forEach(a -> LOGGER.info(String.format("Adding activity '%s' to case instance '%s'", a.getId(), caseInstance.getCaseInstanceId())));
+        private final Future<Integer> failed;
 
-        List<CmmnExecution> childExecutions = ((CaseExecutionEntity) caseInstance).createChildExecutions(newActivities);
-        ((CaseExecutionEntity) caseInstance).triggerChildExecutionsLifecycle(childExecutions);
+        private PendingPartition(int size, Future<Integer> failed) {
+            this.size = size;
+            this.failed = failed;
+        }
     }
 }
@@ -1,22 +1,40 @@
 package io.holunda.camunda.example.caseinstancemigration.migration.command;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.holunda.camunda.example.caseinstancemigration.migration.MigrationProperties;
+import io.holunda.camunda.example.caseinstancemigration.migration.domain.CamundaCaseExecutionRepository;
+import io.holunda.camunda.example.caseinstancemigration.migration.domain.CaseInstanceIdCursor;
+import io.holunda.camunda.example.caseinstancemigration.migration.domain.MigrationProgress;
+import io.holunda.camunda.example.caseinstancemigration.migration.migrator.CaseInstanceMigrationExecutor;
 import io.holunda.camunda.example.caseinstancemigration.migration.migrator.CaseInstanceMigrator;
-import org.camunda.bpm.engine.CaseService;
+import io.holunda.camunda.example.caseinstancemigration.migration.migrator.LockConflictRetryQueue;
+import io.holunda.camunda.example.caseinstancemigration.migration.migrator.MigrationMetrics;
+import io.holunda.camunda.example.caseinstancemigration.migration.migrator.MigrationProgressTracker;
+import io.holunda.camunda.example.caseinstancemigration.migration.migrator.MigrationSummaryLog;
+import io.holunda.camunda.example.caseinstancemigration.migration.migrator.MigrationThrottle;
+import io.holunda.camunda.example.caseinstancemigration.migration.migrator.PartitionLease;
+import io.holunda.camunda.example.caseinstancemigration.migration.migrator.PartitionLeaseManager;
 import org.camunda.bpm.engine.RepositoryService;
 import org.camunda.bpm.engine.impl.interceptor.Command;
 import org.camunda.bpm.engine.impl.interceptor.CommandContext;
 import org.camunda.bpm.engine.repository.CaseDefinition;
 import org.camunda.bpm.engine.repository.ResourceDefinition;
-import org.camunda.bpm.engine.runtime.CaseInstance;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContext;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.util.Assert;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 public class MigrateCaseInstanceVersionCmd implements Command<Void> {
 
@@ -24,20 +42,74 @@ public class MigrateCaseInstanceVersionCmd implements Command<Void> {
 
     private CaseInstanceMigrator migrator;
 
+    private CaseInstanceMigrationExecutor executor;
+
     private RepositoryService repositoryService;
 
-    private CaseService caseService;
+    private CamundaCaseExecutionRepository camundaCaseExecutionRepository;
+
+    private MigrationProperties properties;
+
+    private MigrationProgressTracker progressTracker;
+
+    private MigrationMetrics metrics;
+
+    private MigrationSummaryLog summaryLog;
+
+    private PartitionLeaseManager leaseManager;
+
+    private MigrationThrottle throttle;
+
+    private final String runId;
+
+    private final String targetCaseDefinitionId;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MigrateCaseInstanceVersionCmd.class);
 
     public MigrateCaseInstanceVersionCmd(final String caseDefinitionKey, final ApplicationContext ctx) {
+        this(caseDefinitionKey, UUID.randomUUID().toString(), ctx);
+    }
+
+    /**
+     * @param runId id the progress of this run is recorded with.
+     */
+    public MigrateCaseInstanceVersionCmd(final String caseDefinitionKey, final String runId, final ApplicationContext ctx) {
+        this(caseDefinitionKey, null, runId, ctx);
+    }
+
+    /**
+     * @param targetCaseDefinitionId id of the latest case definition of the key if already known, {@code null} to look it up.
+     * @param runId                  id the progress of this run is recorded with.
+     */
+    public MigrateCaseInstanceVersionCmd(final String caseDefinitionKey, final String targetCaseDefinitionId, final String runId, final ApplicationContext ctx) {
+        this(caseDefinitionKey, targetCaseDefinitionId, runId, ctx, null);
+    }
+
+    /**
+     * @param targetCaseDefinitionId id of the latest case definition of the key if already known, {@code null} to look it up.
+     * @param runId                  id the progress of this run is recorded with.
+     * @param leaseManager           leases the partitions of a sharded migration for the node running this command,
+     *                               {@code null} for the one of this application.
+     */
+    public MigrateCaseInstanceVersionCmd(final String caseDefinitionKey, final String targetCaseDefinitionId, final String runId, final ApplicationContext ctx,
+                                         final PartitionLeaseManager leaseManager) {
         Assert.notNull(caseDefinitionKey, "caseDefinitionKey is missing");
+        Assert.notNull(runId, "runId is missing");
         Assert.notNull(ctx, "ApplicationContext is missing");
         this.caseDefinitionKey = caseDefinitionKey;
+        this.runId = runId;
+        this.targetCaseDefinitionId = targetCaseDefinitionId;
 
         migrator = ctx.getBean(CaseInstanceMigrator.class);
+        executor = ctx.getBean(CaseInstanceMigrationExecutor.class);
         repositoryService = ctx.getBean(RepositoryService.class);
-        caseService = ctx.getBean(CaseService.class);
+        camundaCaseExecutionRepository = ctx.getBean(CamundaCaseExecutionRepository.class);
+        properties = ctx.getBean(MigrationProperties.class);
+        progressTracker = ctx.getBean(MigrationProgressTracker.class);
+        metrics = ctx.getBean(MigrationMetrics.class);
+        summaryLog = ctx.getBean(MigrationSummaryLog.class);
+        this.leaseManager = leaseManager != null ? leaseManager : ctx.getBean(PartitionLeaseManager.class);
+        throttle = ctx.getBean(MigrationThrottle.class);
     }
 
     @Override
@@ -54,13 +126,15 @@ public class MigrateCaseInstanceVersionCmd implements Command<Void> {
         if (LOGGER.isInfoEnabled())
             LOGGER.info("Starting to migrate case instances to latest version");
 
-        final String latestCaseDefId = getLatestCaseDefinitionId(caseDefinitionKey);
+        final String latestCaseDefId = targetCaseDefinitionId != null ? targetCaseDefinitionId : getLatestCaseDefinitionId(caseDefinitionKey);
 
         if (LOGGER.isInfoEnabled())
             LOGGER.info(String.format("Latest case definition id is '%s'", latestCaseDefId));
 
         migrateAllCaseInstances(latestCaseDefId, caseDefinitionKey);
 
+        summaryLog.flush();
+
         LOGGER.info("Migration completed");
     }
 
@@ -68,22 +142,269 @@ public class MigrateCaseInstanceVersionCmd implements Command<Void> {
         Assert.notNull(targetCaseDefId, "targetCaseDefId is missing");
         Assert.notNull(caseDefinitionKey, "caseDefinitionId is missing");
 
-        final List<String> caseDefinitionIds = ImmutableList.copyOf(getAllButTargetCaseDefinitionIds(caseDefinitionKey, targetCaseDefId));
+        final Map<String, Long> caseInstanceCounts = countCaseInstancesOfSourceDefinitions(caseDefinitionKey, targetCaseDefId);
+        final List<String> caseDefinitionIds = ImmutableList.copyOf(caseInstanceCounts.keySet());
+
+        metrics.startRun(caseInstanceCounts.values().stream().mapToLong(Long::longValue).sum());
+        try {
+            if (properties.getSharding().isEnabled()) {
+                migrateAllCaseInstancesSharded(caseDefinitionIds, targetCaseDefId, caseInstanceCounts.values().stream().mapToLong(Long::longValue).sum());
+            } else if (migrator.isBulkMigrationApplicable()) {
+                caseDefinitionIds.forEach(caseDefinitionId -> migrateAllCaseInstancesInBulk(caseDefinitionId, targetCaseDefId));
+            } else {
+                caseDefinitionIds.forEach(caseDefinitionId -> migrateAllCaseInstancesOfDefinition(caseDefinitionId, targetCaseDefId));
+            }
+        } finally {
+            metrics.endRun();
+        }
+    }
+
+    private void migrateAllCaseInstancesOfDefinition(final String sourceCaseDefId, final String targetCaseDefId) {
+        Assert.notNull(sourceCaseDefId, "sourceCaseDefId is missing");
+        Assert.notNull(targetCaseDefId, "targetCaseDefId is missing");
+
+        final MigrationProgress progress = progressTracker.start(runId, sourceCaseDefId, targetCaseDefId);
+
+        final CaseInstanceIdCursor cursor = new CaseInstanceIdCursor(camundaCaseExecutionRepository, sourceCaseDefId, properties.getPageSize(), progress.getLastCaseInstanceId());
+
+        final Deque<PendingPage> pendingPages = new ArrayDeque<>();
+
+        final LockConflictRetryQueue retryQueue = properties.getRetry().isEnabled() ? new LockConflictRetryQueue() : null;
+
+        int found = 0;
+        while (cursor.hasNext()) {
+            final List<String> caseInstanceIds = cursor.next();
+            found += caseInstanceIds.size();
+
+            if (LOGGER.isInfoEnabled())
+                LOGGER.info(String.format("Found %d case instances of '%s' to migrate", caseInstanceIds.size(), sourceCaseDefId));
+
+            if (executor.isParallel()) {
+                pendingPages.add(new PendingPage(caseInstanceIds, executor.submitPartition(caseInstanceIds, targetCaseDefId, retryQueue)));
+                checkpointCompletedPages(pendingPages, progress, false);
+            } else {
+                checkpoint(progress, caseInstanceIds, executor.migratePartition(caseInstanceIds, targetCaseDefId, retryQueue));
+            }
+        }
+
+        checkpointCompletedPages(pendingPages, progress, true);
+
+        if (retryQueue != null && !retryQueue.isEmpty()) {
+            retryLockConflicts(retryQueue, progress, targetCaseDefId);
+        }
+
+        progressTracker.complete(progress.getId());
+
+        if (LOGGER.isInfoEnabled())
+            LOGGER.info(String.format("Processed %d case instances of '%s'", found, sourceCaseDefId));
+    }
+
+    /**
+     * Migrates the case instances together with the other nodes, partition by partition, until all partitions of the
+     * target case definition are completed. If the open partitions are all leased by other nodes, waits for them to
+     * complete or for their leases to expire.
+     */
+    private void migrateAllCaseInstancesSharded(final List<String> sourceCaseDefIds, final String targetCaseDefId, final long caseInstances) {
+        if (sourceCaseDefIds.isEmpty()) {
+            return;
+        }
+
+        leaseManager.openPartitions(targetCaseDefId, () -> partitionBoundaries(sourceCaseDefIds, caseInstances, properties.getSharding().getPartitions()));
+
+        int partitions = 0;
+        while (!leaseManager.isCompleted(targetCaseDefId)) {
+            final PartitionLease lease = leaseManager.acquire(targetCaseDefId);
+
+            if (lease != null) {
+                migrateLeasedPartition(lease, sourceCaseDefIds, targetCaseDefId);
+                partitions++;
+            } else if (!sleep(properties.getSharding().getHeartbeatInterval())) {
+                throw new IllegalStateException(String.format("Interrupted while waiting for partitions of '%s'", targetCaseDefId));
+            }
+        }
+
+        if (LOGGER.isInfoEnabled())
+            LOGGER.info(String.format("Node '%s' migrated %d partitions of '%s', all partitions completed", leaseManager.getNodeId(), partitions, targetCaseDefId));
+    }
+
+    /**
+     * Splits the ids of the case instances of the source case definitions into ranges of about the same size. Every
+     * boundary is looked up relative to the previous one, so the id index is walked once, not once per partition.
+     *
+     * @return the last case instance id of every partition but the last one, at most {@code partitions - 1}.
+     */
+    private List<String> partitionBoundaries(final List<String> sourceCaseDefIds, final long caseInstances, final int partitions) {
+        Assert.isTrue(partitions > 0, "partitions must be positive");
+
+        final PageRequest lastOfRange = new PageRequest((int) Math.max(0, (caseInstances + partitions - 1) / partitions - 1), 1);
+
+        final List<String> boundaries = new ArrayList<>();
+        while (boundaries.size() < partitions - 1) {
+            final List<String> boundary = boundaries.isEmpty()
+                    ? camundaCaseExecutionRepository.findCaseInstanceIdsByCaseDefinitionIds(sourceCaseDefIds, lastOfRange)
+                    : camundaCaseExecutionRepository.findCaseInstanceIdsByCaseDefinitionIdsAfter(sourceCaseDefIds, boundaries.get(boundaries.size() - 1), lastOfRange);
+            if (boundary.isEmpty()) {
+                break;
+            }
+            boundaries.add(boundary.get(0));
+        }
+        return boundaries;
+    }
+
+    /**
+     * Migrates the case instances of all source case definitions within the id range of the leased partition. Stops
+     * as soon as the lease is lost, the partition is then migrated by the node that stole it. If the migration fails,
+     * the lease is released, so another node takes over the partition instead of waiting for it while the heartbeat
+     * keeps renewing the lease.
+     */
+    private void migrateLeasedPartition(final PartitionLease lease, final List<String> sourceCaseDefIds, final String targetCaseDefId) {
+        final LockConflictRetryQueue retryQueue = properties.getRetry().isEnabled() ? new LockConflictRetryQueue() : null;
+
+        boolean handedOver = false;
+        try {
+            long found = 0;
+            long failed = 0;
+            for (String sourceCaseDefId : sourceCaseDefIds) {
+                final CaseInstanceIdCursor cursor = new CaseInstanceIdCursor(camundaCaseExecutionRepository, sourceCaseDefId, properties.getPageSize(),
+                        lease.getAfterCaseInstanceId(), lease.getUpToCaseInstanceId());
+
+                while (cursor.hasNext()) {
+                    if (!leaseManager.isHeld(lease)) {
+                        LOGGER.warn(String.format("Abandoning partition %d of '%s' after losing its lease", lease.getPartition(), targetCaseDefId));
+                        handedOver = true;
+                        return;
+                    }
+
+                    final List<String> caseInstanceIds = cursor.next();
+
+                    final int failedOfPage = executor.migratePartition(caseInstanceIds, targetCaseDefId, retryQueue);
+                    metrics.caseInstancesMigrated(caseInstanceIds.size() - failedOfPage);
+                    metrics.caseInstancesFailed(failedOfPage);
+                    summaryLog.caseInstancesFailed(failedOfPage);
+                    found += caseInstanceIds.size();
+                    failed += failedOfPage;
+                }
+            }
+
+            if (retryQueue != null && !retryQueue.isEmpty()) {
+                final LockConflictRetryQueue.Result result = retryQueue.retry(chunk -> migrator.migrateCaseInstances(chunk, targetCaseDefId), properties.getRetry());
+                metrics.caseInstancesRecovered(result.getRecovered());
+                failed -= result.getRecovered();
+            }
 
-        final List<CaseInstance> caseInstancesToMigrate = new ArrayList<>();
+            handedOver = true;
+            if (leaseManager.complete(lease, found - failed, failed) && LOGGER.isInfoEnabled())
+                LOGGER.info(String.format("Completed partition %d of '%s': %d migrated, %d failed", lease.getPartition(), targetCaseDefId, found - failed, failed));
+        } finally {
+            if (!handedOver) {
+                LOGGER.warn(String.format("Releasing partition %d of '%s' after its migration failed", lease.getPartition(), targetCaseDefId));
+                leaseManager.release(lease);
+            }
+        }
+    }
+
+    /**
+     * Checkpoints the pages submitted to the worker pool in the order they were fetched, so the checkpoint never skips
+     * a page that is still being migrated. Stops at the first page still in progress, unless told to wait for it.
+     */
+    private void checkpointCompletedPages(final Deque<PendingPage> pendingPages, final MigrationProgress progress, final boolean wait) {
+        while (!pendingPages.isEmpty() && (wait || pendingPages.peek().partition.isDone())) {
+            final PendingPage page = pendingPages.poll();
+            checkpoint(progress, page.caseInstanceIds, awaitPartition(page, progress.getSourceCaseDefinitionId()));
+        }
+    }
+
+    /**
+     * Retries the case instances that failed on a lock conflict during the main pass. The recovered ones are moved from
+     * failed to migrated in the progress, the others are reported.
+     */
+    private void retryLockConflicts(final LockConflictRetryQueue retryQueue, final MigrationProgress progress, final String targetCaseDefId) {
+        final LockConflictRetryQueue.Result result = retryQueue.retry(chunk -> migrator.migrateCaseInstances(chunk, targetCaseDefId), properties.getRetry());
+
+        metrics.caseInstancesRecovered(result.getRecovered());
+        progressTracker.checkpoint(progress.getId(), null, result.getRecovered(), -result.getRecovered());
+
+        if (!result.getFailedCaseInstanceIds().isEmpty()) {
+            LOGGER.error(String.format("Failed to migrate %d case instances of '%s' after retrying lock conflicts: %s",
+                    result.getFailedCaseInstanceIds().size(), progress.getSourceCaseDefinitionId(), result.getFailedCaseInstanceIds()));
+        } else if (LOGGER.isInfoEnabled()) {
+            LOGGER.info(String.format("Recovered all %d case instances of '%s' with lock conflicts", result.getRecovered(), progress.getSourceCaseDefinitionId()));
+        }
+    }
+
+    private int awaitPartition(final PendingPage page, final String sourceCaseDefId) {
+        try {
+            return page.partition.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(String.format("Interrupted while migrating case instances of '%s'", sourceCaseDefId), e);
+        } catch (ExecutionException e) {
+            LOGGER.error(String.format("Exception during migration of case instances of '%s'", sourceCaseDefId), e.getCause());
+            return page.caseInstanceIds.size();
+        }
+    }
+
+    private void checkpoint(final MigrationProgress progress, final List<String> caseInstanceIds, final int failed) {
+        metrics.caseInstancesMigrated(caseInstanceIds.size() - failed);
+        metrics.caseInstancesFailed(failed);
+        summaryLog.caseInstancesFailed(failed);
+        progressTracker.checkpoint(progress.getId(), caseInstanceIds.get(caseInstanceIds.size() - 1), caseInstanceIds.size() - failed, failed);
+    }
 
-        caseDefinitionIds.forEach(caseDefinitionId -> caseInstancesToMigrate.addAll(caseService.createCaseInstanceQuery().caseDefinitionId(caseDefinitionId).list()));
+    /**
+     * Migrates the case instances chunk by chunk with set-based updates. A chunk failing as a whole is migrated again
+     * case instance by case instance, so only the failing ones are left behind; the following chunks start after it.
+     */
+    private void migrateAllCaseInstancesInBulk(final String sourceCaseDefId, final String targetCaseDefId) {
+        Assert.notNull(sourceCaseDefId, "sourceCaseDefId is missing");
+        Assert.notNull(targetCaseDefId, "targetCaseDefId is missing");
 
         if (LOGGER.isInfoEnabled())
-            LOGGER.info(String.format("Found %d case instances to migrate", caseInstancesToMigrate.size()));
+            LOGGER.info(String.format("Migrating case instances of '%s' in bulk", sourceCaseDefId));
+
+        final MigrationProgress progress = progressTracker.start(runId, sourceCaseDefId, targetCaseDefId);
+
+        final LockConflictRetryQueue retryQueue = properties.getRetry().isEnabled() ? new LockConflictRetryQueue() : null;
 
-        caseInstancesToMigrate.forEach(caseInstance -> {
+        int migrated = 0;
+        int failed = 0;
+        String afterCaseInstanceId = null;
+        int chunk;
+        do {
+            final long start = System.nanoTime();
             try {
-                migrator.migrateOneCaseInstance(caseInstance.getCaseInstanceId(), targetCaseDefId);
-            } catch (Exception e) {
-                LOGGER.error(String.format("Exception during migration of case instance '%s", caseInstance.getCaseInstanceId()), e);
+                chunk = migrator.migrateNextCaseInstanceChunkInBulk(sourceCaseDefId, targetCaseDefId, properties.getBulkChunkSize(), afterCaseInstanceId);
+                if (chunk > 0) {
+                    throttle.chunkCompleted(System.nanoTime() - start);
+                    // the size of a bulk chunk is only known once it is migrated, so the throttle delays the next one
+                    throttle.acquire(chunk);
+                    migrated += chunk;
+                    metrics.caseInstancesMigrated(chunk);
+                    progressTracker.checkpoint(progress.getId(), null, chunk, 0);
+                }
+            } catch (RuntimeException e) {
+                LOGGER.error(String.format("Exception during bulk migration of case definition '%s', migrating the case instances of the chunk one by one", sourceCaseDefId), e);
+
+                final List<String> caseInstanceIds = migrator.findNextCaseInstanceChunk(sourceCaseDefId, properties.getBulkChunkSize(), afterCaseInstanceId);
+                chunk = caseInstanceIds.size();
+                if (chunk > 0) {
+                    final int failedOfChunk = executor.migratePartition(caseInstanceIds, targetCaseDefId, retryQueue);
+                    checkpoint(progress, caseInstanceIds, failedOfChunk);
+                    migrated += chunk - failedOfChunk;
+                    failed += failedOfChunk;
+                    afterCaseInstanceId = caseInstanceIds.get(chunk - 1);
+                }
             }
-        });
+        } while (chunk > 0);
+
+        if (retryQueue != null && !retryQueue.isEmpty()) {
+            retryLockConflicts(retryQueue, progress, targetCaseDefId);
+        }
+
+        progressTracker.complete(progress.getId());
+
+        if (LOGGER.isInfoEnabled())
+            LOGGER.info(String.format("Migrated %d case instances of '%s' in bulk, %d failed", migrated, sourceCaseDefId, failed));
     }
 
     private String getLatestCaseDefinitionId(String caseDefinitionKey) {
@@ -98,12 +419,60 @@ public class MigrateCaseInstanceVersionCmd implements Command<Void> {
         return caseDefinition.getId();
     }
 
-    private List<String> getAllButTargetCaseDefinitionIds(final String caseDefinitionKey, final String targetCaseDefinitionId) {
+    /**
+     * Counts the case instances of all but the target case definition of the key with one grouped query, so the
+     * (usually many) old versions without case instances are dropped before any per-definition work.
+     *
+     * @return number of case instances per source case definition having any, in version order.
+     */
+    private Map<String, Long> countCaseInstancesOfSourceDefinitions(final String caseDefinitionKey, final String targetCaseDefinitionId) {
         Assert.notNull(caseDefinitionKey, "caseDefinitionKey is missing");
         Assert.notNull(targetCaseDefinitionId, "targetCaseDefinitionId is missing");
 
-        final List<CaseDefinition> caseDefinitions = ImmutableList.copyOf(repositoryService.createCaseDefinitionQuery().caseDefinitionKey(caseDefinitionKey).list());
+        final List<String> caseDefinitionIds = ImmutableList.copyOf(repositoryService.createCaseDefinitionQuery().caseDefinitionKey(caseDefinitionKey)
+                .orderByCaseDefinitionVersion().asc().list().stream()
+                .map(ResourceDefinition::getId)
+                .filter(id -> !id.equals(targetCaseDefinitionId))
+                .iterator());
+
+        if (caseDefinitionIds.isEmpty()) {
+            return ImmutableMap.of();
+        }
+
+        final Map<String, Long> counts = new HashMap<>();
+        camundaCaseExecutionRepository.countCaseInstancesByCaseDefinitionIds(caseDefinitionIds).forEach(row -> counts.put((String) row[0], (Long) row[1]));
+
+        final ImmutableMap.Builder<String, Long> caseInstanceCounts = ImmutableMap.builder();
+        caseDefinitionIds.stream().filter(counts::containsKey).forEach(id -> caseInstanceCounts.put(id, counts.get(id)));
 
-        return ImmutableList.copyOf(caseDefinitions.stream().filter(def -> !def.getId().equals(targetCaseDefinitionId)).map(ResourceDefinition::getId).collect(Collectors.toList()));
+        if (LOGGER.isInfoEnabled())
+            LOGGER.info(String.format("Found case instances of %d of %d source case definitions of '%s'", counts.size(), caseDefinitionIds.size(), caseDefinitionKey));
+
+        return caseInstanceCounts.build();
+    }
+
+    private static boolean sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Page of case instances handed over to the worker pool, together with the future of its failure count.
+     */
+    private static final class PendingPage {
+
+        private final List<String> caseInstanceIds;
+
+        private final Future<Integer> partition;
+
+        private PendingPage(List<String> caseInstanceIds, Future<Integer> partition) {
+            this.caseInstanceIds = caseInstanceIds;
+            this.partition = partition;
+        }
     }
 }
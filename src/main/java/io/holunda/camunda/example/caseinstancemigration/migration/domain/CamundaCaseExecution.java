@@ -20,6 +20,18 @@ public final class CamundaCaseExecution {
     @Column(name = "CASE_DEF_ID_")
     private String caseDefinitionId;
 
+    @Column(name = "ACT_ID_", insertable = false)
+    private String activityId;
+
+    @Column(name = "BUSINESS_KEY_", insertable = false, updatable = false)
+    private String businessKey;
+
+    @Column(name = "CURRENT_STATE_", insertable = false, updatable = false)
+    private Integer state;
+
+    @Column(name = "TENANT_ID_", insertable = false, updatable = false)
+    private String tenantId;
+
     private CamundaCaseExecution() {
     } //NOSONAR
 
@@ -27,7 +39,39 @@ public final class CamundaCaseExecution {
         return id;
     }
 
+    public String getCaseInstanceId() {
+        return caseInstanceId;
+    }
+
+    public boolean isCaseInstance() {
+        return id.equals(caseInstanceId);
+    }
+
+    public String getActivityId() {
+        return activityId;
+    }
+
+    public String getBusinessKey() {
+        return businessKey;
+    }
+
+    public Integer getState() {
+        return state;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public String getCaseDefinitionId() {
+        return caseDefinitionId;
+    }
+
     public void setCaseDefinitionId(String caseDefinitionId) {
         this.caseDefinitionId = caseDefinitionId;
     }
+
+    public void setActivityId(String activityId) {
+        this.activityId = activityId;
+    }
 }
@@ -1,11 +1,99 @@
 package io.holunda.camunda.example.caseinstancemigration.migration.domain;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
-public interface CamundaCaseExecutionRepository extends JpaRepository<CamundaCaseExecution, Integer> {
-    List<CamundaCaseExecution> findByCaseInstanceId(String caseInstanceId);
+public interface CamundaCaseExecutionRepository extends JpaRepository<CamundaCaseExecution, String> {
+
+    /**
+     * @return executions of the given case instances still referencing another than the given case definition.
+     */
+    List<CamundaCaseExecution> findByCaseInstanceIdInAndCaseDefinitionIdNot(Collection<String> caseInstanceIds, String caseDefinitionId);
+
+    @Query("select e from CamundaCaseExecution e where e.id = e.caseInstanceId and e.caseInstanceId in :caseInstanceIds")
+    List<CamundaCaseExecution> findCaseInstancesByCaseInstanceIds(@Param("caseInstanceIds") Collection<String> caseInstanceIds);
+
+    @Query("select e.caseInstanceId from CamundaCaseExecution e where e.id = e.caseInstanceId and e.caseInstanceId in :caseInstanceIds")
+    List<String> findCaseInstanceIdsByCaseInstanceIds(@Param("caseInstanceIds") Collection<String> caseInstanceIds);
+
+    @Query("select e.caseInstanceId from CamundaCaseExecution e where e.id = e.caseInstanceId and e.caseDefinitionId = :caseDefinitionId order by e.caseInstanceId")
+    List<String> findCaseInstanceIdsByCaseDefinitionId(@Param("caseDefinitionId") String caseDefinitionId, Pageable pageable);
+
+    @Query("select e.caseInstanceId from CamundaCaseExecution e where e.id = e.caseInstanceId and e.caseDefinitionId = :caseDefinitionId " +
+            "and e.caseInstanceId > :afterCaseInstanceId order by e.caseInstanceId")
+    List<String> findCaseInstanceIdsByCaseDefinitionIdAfter(@Param("caseDefinitionId") String caseDefinitionId,
+                                                            @Param("afterCaseInstanceId") String afterCaseInstanceId,
+                                                            Pageable pageable);
+
+    @Query("select e.caseInstanceId from CamundaCaseExecution e where e.id = e.caseInstanceId and e.caseDefinitionId = :caseDefinitionId " +
+            "and e.caseInstanceId <= :upToCaseInstanceId order by e.caseInstanceId")
+    List<String> findCaseInstanceIdsByCaseDefinitionIdUpTo(@Param("caseDefinitionId") String caseDefinitionId,
+                                                           @Param("upToCaseInstanceId") String upToCaseInstanceId,
+                                                           Pageable pageable);
+
+    @Query("select e.caseInstanceId from CamundaCaseExecution e where e.id = e.caseInstanceId and e.caseDefinitionId = :caseDefinitionId " +
+            "and e.caseInstanceId > :afterCaseInstanceId and e.caseInstanceId <= :upToCaseInstanceId order by e.caseInstanceId")
+    List<String> findCaseInstanceIdsByCaseDefinitionIdAfterUpTo(@Param("caseDefinitionId") String caseDefinitionId,
+                                                                @Param("afterCaseInstanceId") String afterCaseInstanceId,
+                                                                @Param("upToCaseInstanceId") String upToCaseInstanceId,
+                                                                Pageable pageable);
+
+    @Query("select e.caseInstanceId from CamundaCaseExecution e where e.id = e.caseInstanceId and e.caseDefinitionId in :caseDefinitionIds " +
+            "order by e.caseInstanceId")
+    List<String> findCaseInstanceIdsByCaseDefinitionIds(@Param("caseDefinitionIds") Collection<String> caseDefinitionIds, Pageable pageable);
+
+    @Query("select e.caseInstanceId from CamundaCaseExecution e where e.id = e.caseInstanceId and e.caseDefinitionId in :caseDefinitionIds " +
+            "and e.caseInstanceId > :afterCaseInstanceId order by e.caseInstanceId")
+    List<String> findCaseInstanceIdsByCaseDefinitionIdsAfter(@Param("caseDefinitionIds") Collection<String> caseDefinitionIds,
+                                                             @Param("afterCaseInstanceId") String afterCaseInstanceId,
+                                                             Pageable pageable);
+
+    /**
+     * @return per case definition among the given ones having case instances: its id and the number of case
+     * instances, as {@code [String, Long]}.
+     */
+    @Query("select e.caseDefinitionId, count(e) from CamundaCaseExecution e where e.id = e.caseInstanceId " +
+            "and e.caseDefinitionId in :caseDefinitionIds group by e.caseDefinitionId")
+    List<Object[]> countCaseInstancesByCaseDefinitionIds(@Param("caseDefinitionIds") Collection<String> caseDefinitionIds);
+
+    /**
+     * @return per case definition among the given ones: its id, the number of case instances and the number of
+     * executions, as {@code [String, Long, Long]}.
+     */
+    @Query("select e.caseDefinitionId, sum(case when e.id = e.caseInstanceId then 1 else 0 end), count(e) from CamundaCaseExecution e " +
+            "where e.caseDefinitionId in :caseDefinitionIds group by e.caseDefinitionId")
+    List<Object[]> countCaseInstancesAndExecutionsByCaseDefinitionIds(@Param("caseDefinitionIds") Collection<String> caseDefinitionIds);
+
+    /**
+     * @return per case definition and activity among the given ones: the case definition id, the activity id and the
+     * number of case instances having an execution for it, as {@code [String, String, Long]}.
+     */
+    @Query("select e.caseDefinitionId, e.activityId, count(distinct e.caseInstanceId) from CamundaCaseExecution e " +
+            "where e.caseDefinitionId in :caseDefinitionIds and e.activityId in :activityIds group by e.caseDefinitionId, e.activityId")
+    List<Object[]> countCaseInstancesByActivityIds(@Param("caseDefinitionIds") Collection<String> caseDefinitionIds,
+                                                   @Param("activityIds") Collection<String> activityIds);
+
+    /**
+     * @return ids of those case instances among the given ones having an execution for each of the given activities.
+     */
+    @Query("select e.caseInstanceId from CamundaCaseExecution e where e.caseInstanceId in :caseInstanceIds and e.activityId in :activityIds " +
+            "group by e.caseInstanceId having count(distinct e.activityId) = :activityCount")
+    List<String> findCaseInstanceIdsHavingAllActivities(@Param("caseInstanceIds") Collection<String> caseInstanceIds,
+                                                        @Param("activityIds") Collection<String> activityIds,
+                                                        @Param("activityCount") long activityCount);
+
+    @Modifying
+    @Query("update CamundaCaseExecution e set e.caseDefinitionId = :targetCaseDefId, e.revision = e.revision + 1 " +
+            "where e.caseDefinitionId = :sourceCaseDefId and e.caseInstanceId in :caseInstanceIds")
+    int updateCaseDefinitionId(@Param("sourceCaseDefId") String sourceCaseDefId,
+                               @Param("targetCaseDefId") String targetCaseDefId,
+                               @Param("caseInstanceIds") Collection<String> caseInstanceIds);
 }
@@ -20,6 +20,9 @@ public final class CamundaTask {
     @Column(name = "CASE_DEF_ID_")
     private String caseDefinitionId;
 
+    @Column(name = "TASK_DEF_KEY_", insertable = false)
+    private String taskDefinitionKey;
+
     private CamundaTask() {
     } //NOSONAR
 
@@ -27,7 +30,23 @@ public final class CamundaTask {
         return id;
     }
 
+    public String getCaseInstanceId() {
+        return caseInstanceId;
+    }
+
+    public String getCaseDefinitionId() {
+        return caseDefinitionId;
+    }
+
     public void setCaseDefinitionId(String caseDefinitionId) {
         this.caseDefinitionId = caseDefinitionId;
     }
+
+    public String getTaskDefinitionKey() {
+        return taskDefinitionKey;
+    }
+
+    public void setTaskDefinitionKey(String taskDefinitionKey) {
+        this.taskDefinitionKey = taskDefinitionKey;
+    }
 }
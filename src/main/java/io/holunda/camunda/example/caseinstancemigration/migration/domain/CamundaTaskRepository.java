@@ -1,11 +1,45 @@
 package io.holunda.camunda.example.caseinstancemigration.migration.domain;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
-public interface CamundaTaskRepository extends JpaRepository<CamundaTask, Integer> {
-    List<CamundaTask> findByCaseInstanceId(String caseInstanceId);
+public interface CamundaTaskRepository extends JpaRepository<CamundaTask, String> {
+
+    /**
+     * Rows fetched per database round trip by the streaming query, the default page size.
+     */
+    String FETCH_SIZE = "500";
+
+    /**
+     * @return tasks of the given case instances still referencing another than the given case definition, fetched
+     * {@link #FETCH_SIZE} rows at a time. To be consumed within a transaction and closed.
+     */
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = FETCH_SIZE))
+    @Query("select t from CamundaTask t where t.caseInstanceId in :caseInstanceIds and t.caseDefinitionId <> :caseDefinitionId")
+    Stream<CamundaTask> streamByCaseInstanceIdInAndCaseDefinitionIdNot(@Param("caseInstanceIds") Collection<String> caseInstanceIds,
+                                                                      @Param("caseDefinitionId") String caseDefinitionId);
+
+    /**
+     * @return per case definition among the given ones: its id and the number of tasks, as {@code [String, Long]}.
+     */
+    @Query("select t.caseDefinitionId, count(t) from CamundaTask t where t.caseDefinitionId in :caseDefinitionIds group by t.caseDefinitionId")
+    List<Object[]> countTasksByCaseDefinitionIds(@Param("caseDefinitionIds") Collection<String> caseDefinitionIds);
+
+    @Modifying
+    @Query("update CamundaTask t set t.caseDefinitionId = :targetCaseDefId, t.revision = t.revision + 1 " +
+            "where t.caseDefinitionId = :sourceCaseDefId and t.caseInstanceId in :caseInstanceIds")
+    int updateCaseDefinitionId(@Param("sourceCaseDefId") String sourceCaseDefId,
+                               @Param("targetCaseDefId") String targetCaseDefId,
+                               @Param("caseInstanceIds") Collection<String> caseInstanceIds);
 }
@@ -0,0 +1,94 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.domain;
+
+import com.google.common.collect.ImmutableList;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.util.Assert;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Streams the ids of all case instances of one case definition page by page, ordered by case instance id.
+ * Every page is fetched with a keyset condition on the last id of the previous page, so no page depends on an offset
+ * and only the ids of the current page are held in memory. An upper bound restricts the cursor to a range of ids.
+ */
+public class CaseInstanceIdCursor implements Iterator<List<String>> {
+
+    private final CamundaCaseExecutionRepository repository;
+
+    private final String caseDefinitionId;
+
+    private final int pageSize;
+
+    private final String upToCaseInstanceId;
+
+    private String lastCaseInstanceId;
+
+    private List<String> nextPage;
+
+    private boolean exhausted;
+
+    public CaseInstanceIdCursor(final CamundaCaseExecutionRepository repository, final String caseDefinitionId, final int pageSize) {
+        this(repository, caseDefinitionId, pageSize, null);
+    }
+
+    /**
+     * @param afterCaseInstanceId case instance id to resume after, null to start with the first case instance.
+     */
+    public CaseInstanceIdCursor(final CamundaCaseExecutionRepository repository, final String caseDefinitionId, final int pageSize,
+                                final String afterCaseInstanceId) {
+        this(repository, caseDefinitionId, pageSize, afterCaseInstanceId, null);
+    }
+
+    /**
+     * @param afterCaseInstanceId case instance id to resume after, null to start with the first case instance.
+     * @param upToCaseInstanceId  last case instance id of the range, null to continue up to the last case instance.
+     */
+    public CaseInstanceIdCursor(final CamundaCaseExecutionRepository repository, final String caseDefinitionId, final int pageSize,
+                                final String afterCaseInstanceId, final String upToCaseInstanceId) {
+        Assert.notNull(repository, "repository is missing");
+        Assert.notNull(caseDefinitionId, "caseDefinitionId is missing");
+        Assert.isTrue(pageSize > 0, "pageSize must be positive");
+        this.repository = repository;
+        this.caseDefinitionId = caseDefinitionId;
+        this.pageSize = pageSize;
+        this.lastCaseInstanceId = afterCaseInstanceId;
+        this.upToCaseInstanceId = upToCaseInstanceId;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextPage == null && !exhausted) {
+            nextPage = fetchNextPage();
+            exhausted = nextPage.size() < pageSize;
+        }
+        return nextPage != null && !nextPage.isEmpty();
+    }
+
+    @Override
+    public List<String> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException(String.format("No more case instances of '%s'", caseDefinitionId));
+        }
+        final List<String> page = nextPage;
+        nextPage = null;
+        lastCaseInstanceId = page.get(page.size() - 1);
+        return page;
+    }
+
+    private List<String> fetchNextPage() {
+        final PageRequest pageRequest = new PageRequest(0, pageSize);
+
+        if (upToCaseInstanceId != null) {
+            if (lastCaseInstanceId == null) {
+                return ImmutableList.copyOf(repository.findCaseInstanceIdsByCaseDefinitionIdUpTo(caseDefinitionId, upToCaseInstanceId, pageRequest));
+            }
+            return ImmutableList.copyOf(repository.findCaseInstanceIdsByCaseDefinitionIdAfterUpTo(caseDefinitionId, lastCaseInstanceId, upToCaseInstanceId, pageRequest));
+        }
+        if (lastCaseInstanceId == null) {
+            return ImmutableList.copyOf(repository.findCaseInstanceIdsByCaseDefinitionId(caseDefinitionId, pageRequest));
+        }
+        return ImmutableList.copyOf(repository.findCaseInstanceIdsByCaseDefinitionIdAfter(caseDefinitionId, lastCaseInstanceId, pageRequest));
+    }
+}
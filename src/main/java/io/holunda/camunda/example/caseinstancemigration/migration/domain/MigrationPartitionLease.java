@@ -0,0 +1,132 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.domain;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/**
+ * Lease of one partition of the case instances to migrate to a target case definition, a range of case instance ids
+ * after {@code AFTER_CASE_INST_ID_} (open if null) up to {@code UP_TO_CASE_INST_ID_} (open if null). The ranges of
+ * all partitions of a target case definition together cover every case instance id. A node owns the partition
+ * until the lease expires; every change of owner or expiration is a compare-and-set on the {@code REV_} column, so of
+ * several nodes acquiring, renewing or stealing the same lease only one succeeds.
+ */
+@Entity
+@Table(name = "MIGRATION_PARTITION_LEASE")
+public class MigrationPartitionLease {
+
+    public enum State {
+        OPEN,
+        COMPLETED
+    }
+
+    @Id
+    @Column(name = "ID_")
+    private String id;
+
+    @Version
+    @Column(name = "REV_")
+    private Integer revision;
+
+    @Column(name = "TARGET_CASE_DEF_ID_")
+    private String targetCaseDefinitionId;
+
+    @Column(name = "PARTITION_")
+    private int partition;
+
+    @Column(name = "PARTITIONS_")
+    private int partitions;
+
+    @Column(name = "AFTER_CASE_INST_ID_")
+    private String afterCaseInstanceId;
+
+    @Column(name = "UP_TO_CASE_INST_ID_")
+    private String upToCaseInstanceId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "STATE_")
+    private State state;
+
+    @Column(name = "OWNER_")
+    private String owner;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "EXPIRATION_TIME_")
+    private Date expirationTime;
+
+    @Column(name = "MIGRATED_")
+    private long migrated;
+
+    @Column(name = "FAILED_")
+    private long failed;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "UPDATE_TIME_")
+    private Date updateTime;
+
+    private MigrationPartitionLease() {
+    } //NOSONAR
+
+    public MigrationPartitionLease(String id, String targetCaseDefinitionId, int partition, int partitions,
+                                   String afterCaseInstanceId, String upToCaseInstanceId) {
+        this.id = id;
+        this.targetCaseDefinitionId = targetCaseDefinitionId;
+        this.partition = partition;
+        this.partitions = partitions;
+        this.afterCaseInstanceId = afterCaseInstanceId;
+        this.upToCaseInstanceId = upToCaseInstanceId;
+        this.state = State.OPEN;
+        this.updateTime = new Date();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Integer getRevision() {
+        return revision;
+    }
+
+    public String getTargetCaseDefinitionId() {
+        return targetCaseDefinitionId;
+    }
+
+    public int getPartition() {
+        return partition;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    public String getAfterCaseInstanceId() {
+        return afterCaseInstanceId;
+    }
+
+    public String getUpToCaseInstanceId() {
+        return upToCaseInstanceId;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public Date getExpirationTime() {
+        return expirationTime;
+    }
+
+    public long getMigrated() {
+        return migrated;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public Date getUpdateTime() {
+        return updateTime;
+    }
+}
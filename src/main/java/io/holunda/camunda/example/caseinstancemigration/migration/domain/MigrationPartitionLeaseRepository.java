@@ -0,0 +1,77 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.domain;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Leases are only changed by the compare-and-set updates below, each matching the revision read before and returning
+ * 0 if another node changed the lease in between.
+ */
+@Repository
+public interface MigrationPartitionLeaseRepository extends JpaRepository<MigrationPartitionLease, String> {
+    List<MigrationPartitionLease> findByTargetCaseDefinitionIdOrderByPartition(String targetCaseDefinitionId);
+
+    long countByTargetCaseDefinitionId(String targetCaseDefinitionId);
+
+    long countByTargetCaseDefinitionIdAndState(String targetCaseDefinitionId, MigrationPartitionLease.State state);
+
+    /**
+     * @return open leases of the target case definition without owner or with an expired one.
+     */
+    @Query("select l from MigrationPartitionLease l where l.targetCaseDefinitionId = :targetCaseDefId and l.state = :state " +
+            "and (l.owner is null or l.expirationTime < :now) order by l.partition")
+    List<MigrationPartitionLease> findAcquirable(@Param("targetCaseDefId") String targetCaseDefId,
+                                                 @Param("state") MigrationPartitionLease.State state,
+                                                 @Param("now") Date now);
+
+    @Modifying
+    @Query("update MigrationPartitionLease l set l.state = :state, l.updateTime = :now, l.revision = l.revision + 1 " +
+            "where l.targetCaseDefinitionId = :targetCaseDefId")
+    int updateState(@Param("targetCaseDefId") String targetCaseDefId,
+                    @Param("state") MigrationPartitionLease.State state,
+                    @Param("now") Date now);
+
+    @Modifying
+    @Query("update MigrationPartitionLease l set l.owner = :owner, l.expirationTime = :expirationTime, l.updateTime = :now, l.revision = l.revision + 1 " +
+            "where l.id = :id and l.revision = :revision")
+    int acquire(@Param("id") String id,
+                @Param("revision") Integer revision,
+                @Param("owner") String owner,
+                @Param("expirationTime") Date expirationTime,
+                @Param("now") Date now);
+
+    @Modifying
+    @Query("update MigrationPartitionLease l set l.expirationTime = :expirationTime, l.updateTime = :now, l.revision = l.revision + 1 " +
+            "where l.id = :id and l.revision = :revision and l.owner = :owner")
+    int renew(@Param("id") String id,
+              @Param("revision") Integer revision,
+              @Param("owner") String owner,
+              @Param("expirationTime") Date expirationTime,
+              @Param("now") Date now);
+
+    @Modifying
+    @Query("update MigrationPartitionLease l set l.owner = null, l.expirationTime = null, l.updateTime = :now, l.revision = l.revision + 1 " +
+            "where l.id = :id and l.revision = :revision and l.owner = :owner")
+    int release(@Param("id") String id,
+                @Param("revision") Integer revision,
+                @Param("owner") String owner,
+                @Param("now") Date now);
+
+    @Modifying
+    @Query("update MigrationPartitionLease l set l.state = :state, l.owner = null, l.expirationTime = null, " +
+            "l.migrated = l.migrated + :migrated, l.failed = l.failed + :failed, l.updateTime = :now, l.revision = l.revision + 1 " +
+            "where l.id = :id and l.revision = :revision and l.owner = :owner")
+    int complete(@Param("id") String id,
+                 @Param("revision") Integer revision,
+                 @Param("owner") String owner,
+                 @Param("state") MigrationPartitionLease.State state,
+                 @Param("migrated") long migrated,
+                 @Param("failed") long failed,
+                 @Param("now") Date now);
+}
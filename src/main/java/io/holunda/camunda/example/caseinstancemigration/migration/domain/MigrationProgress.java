@@ -0,0 +1,135 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.domain;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/**
+ * Checkpoint of the migration of all case instances of one source case definition to a target case definition.
+ * Case instances are migrated in ascending id order, so everything up to {@link #getLastCaseInstanceId()} has been
+ * processed and an interrupted run can be resumed from there.
+ */
+@Entity
+@Table(name = "MIGRATION_PROGRESS")
+public class MigrationProgress {
+
+    public enum State {
+        RUNNING,
+        COMPLETED
+    }
+
+    @Id
+    @Column(name = "ID_")
+    private String id;
+
+    @Version
+    @Column(name = "REV_")
+    private Integer revision;
+
+    @Column(name = "RUN_ID_")
+    private String runId;
+
+    @Column(name = "SOURCE_CASE_DEF_ID_")
+    private String sourceCaseDefinitionId;
+
+    @Column(name = "TARGET_CASE_DEF_ID_")
+    private String targetCaseDefinitionId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "STATE_")
+    private State state;
+
+    @Column(name = "LAST_CASE_INST_ID_")
+    private String lastCaseInstanceId;
+
+    @Column(name = "MIGRATED_")
+    private long migrated;
+
+    @Column(name = "FAILED_")
+    private long failed;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "START_TIME_")
+    private Date startTime;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "UPDATE_TIME_")
+    private Date updateTime;
+
+    private MigrationProgress() {
+    } //NOSONAR
+
+    public MigrationProgress(String id, String runId, String sourceCaseDefinitionId, String targetCaseDefinitionId) {
+        this.id = id;
+        this.runId = runId;
+        this.sourceCaseDefinitionId = sourceCaseDefinitionId;
+        this.targetCaseDefinitionId = targetCaseDefinitionId;
+        this.state = State.RUNNING;
+        this.startTime = new Date();
+        this.updateTime = startTime;
+    }
+
+    /**
+     * Advances the checkpoint past a processed page of case instances.
+     */
+    public void checkpoint(String lastCaseInstanceId, long migrated, long failed) {
+        if (lastCaseInstanceId != null) {
+            this.lastCaseInstanceId = lastCaseInstanceId;
+        }
+        this.migrated += migrated;
+        this.failed += failed;
+        this.updateTime = new Date();
+    }
+
+    /**
+     * Takes over an unfinished checkpoint for another run.
+     */
+    public void resume(String runId) {
+        this.runId = runId;
+        this.updateTime = new Date();
+    }
+
+    public void complete() {
+        this.state = State.COMPLETED;
+        this.updateTime = new Date();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getRunId() {
+        return runId;
+    }
+
+    public String getSourceCaseDefinitionId() {
+        return sourceCaseDefinitionId;
+    }
+
+    public String getTargetCaseDefinitionId() {
+        return targetCaseDefinitionId;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public String getLastCaseInstanceId() {
+        return lastCaseInstanceId;
+    }
+
+    public long getMigrated() {
+        return migrated;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public Date getStartTime() {
+        return startTime;
+    }
+
+    public Date getUpdateTime() {
+        return updateTime;
+    }
+}
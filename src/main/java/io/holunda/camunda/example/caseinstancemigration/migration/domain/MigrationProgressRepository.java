@@ -0,0 +1,17 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.domain;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface MigrationProgressRepository extends JpaRepository<MigrationProgress, String> {
+    MigrationProgress findFirstBySourceCaseDefinitionIdAndTargetCaseDefinitionIdAndStateOrderByStartTimeDesc(String sourceCaseDefinitionId,
+                                                                                                              String targetCaseDefinitionId,
+                                                                                                              MigrationProgress.State state);
+
+    List<MigrationProgress> findByRunId(String runId);
+
+    List<MigrationProgress> findTop10ByStateOrderByStartTimeDesc(MigrationProgress.State state);
+}
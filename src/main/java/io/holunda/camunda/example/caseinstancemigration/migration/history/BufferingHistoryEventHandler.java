@@ -0,0 +1,146 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.history;
+
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.camunda.bpm.engine.impl.db.sql.DbSqlSessionFactory;
+import org.camunda.bpm.engine.impl.history.event.HistoryEvent;
+import org.camunda.bpm.engine.impl.history.event.HistoryEventTypes;
+import org.camunda.bpm.engine.impl.history.handler.DbHistoryEventHandler;
+import org.camunda.bpm.engine.impl.history.handler.HistoryEventHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.TransactionAwareDataSourceProxy;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * History event handler used by the migrators. Update events produced within a transaction are buffered and written
+ * as one JDBC batch right before the transaction commits, so every migrated chunk costs one round trip for its history
+ * instead of one per event. The buffer is discarded if the transaction rolls back.
+ * <p>
+ * Only the update events produced by the migration are buffered, and only if the engine writes history to its own
+ * database. Everything else is passed to the engine's history event handler right away.
+ * <p>
+ * Not a Spring bean on purpose, the engine would pick up every {@link HistoryEventHandler} bean as its own handler.
+ */
+public class BufferingHistoryEventHandler implements HistoryEventHandler {
+
+    private final ProcessEngine processEngine;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BufferingHistoryEventHandler.class);
+
+    public BufferingHistoryEventHandler(ProcessEngine processEngine) {
+        this.processEngine = processEngine;
+    }
+
+    @Override
+    public void handleEvent(HistoryEvent historyEvent) {
+        handleEvents(Collections.singletonList(historyEvent));
+    }
+
+    @Override
+    public void handleEvents(List<HistoryEvent> historyEvents) {
+        Assert.notNull(historyEvents, "historyEvents is missing");
+
+        for (HistoryEvent historyEvent : historyEvents) {
+            if (isBufferable(historyEvent)) {
+                getBuffer().add(historyEvent);
+            } else {
+                getEngineHistoryEventHandler().handleEvent(historyEvent);
+            }
+        }
+    }
+
+    private boolean isBufferable(final HistoryEvent historyEvent) {
+        return TransactionSynchronizationManager.isSynchronizationActive()
+                && getEngineHistoryEventHandler() instanceof DbHistoryEventHandler
+                && (historyEvent.isEventOfType(HistoryEventTypes.CASE_INSTANCE_UPDATE) || historyEvent.isEventOfType(HistoryEventTypes.TASK_INSTANCE_MIGRATE));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<HistoryEvent> getBuffer() {
+        List<HistoryEvent> buffer = (List<HistoryEvent>) TransactionSynchronizationManager.getResource(this);
+
+        if (buffer == null) {
+            buffer = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(this, buffer);
+            TransactionSynchronizationManager.registerSynchronization(new BufferSynchronization(buffer));
+        }
+        return buffer;
+    }
+
+    private void writeBatch(final List<HistoryEvent> historyEvents) {
+        if (historyEvents.isEmpty()) {
+            return;
+        }
+
+        if (LOGGER.isDebugEnabled())
+            LOGGER.debug(String.format("Writing %d buffered history events", historyEvents.size()));
+
+        final DbSqlSessionFactory dbSqlSessionFactory = getProcessEngineConfiguration().getDbSqlSessionFactory();
+
+        // the connection proxy uses the connection of the running transaction, closing the session only releases it
+        try (SqlSession sqlSession = dbSqlSessionFactory.getSqlSessionFactory().openSession(ExecutorType.BATCH, getTransactionAwareDataSource().getConnection())) {
+            for (HistoryEvent historyEvent : historyEvents) {
+                sqlSession.update(dbSqlSessionFactory.mapStatement(dbSqlSessionFactory.getUpdateStatement(historyEvent)), historyEvent);
+            }
+            sqlSession.flushStatements();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not write buffered history events", e);
+        }
+    }
+
+    private DataSource getTransactionAwareDataSource() {
+        final DataSource dataSource = getProcessEngineConfiguration().getDataSource();
+        return dataSource instanceof TransactionAwareDataSourceProxy ? dataSource : new TransactionAwareDataSourceProxy(dataSource);
+    }
+
+    private HistoryEventHandler getEngineHistoryEventHandler() {
+        return getProcessEngineConfiguration().getHistoryEventHandler();
+    }
+
+    private ProcessEngineConfigurationImpl getProcessEngineConfiguration() {
+        return (ProcessEngineConfigurationImpl) processEngine.getProcessEngineConfiguration();
+    }
+
+    /**
+     * Writes the buffer before commit and keeps it bound to its own transaction while nested transactions run.
+     */
+    private class BufferSynchronization extends TransactionSynchronizationAdapter {
+
+        private final List<HistoryEvent> buffer;
+
+        BufferSynchronization(List<HistoryEvent> buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResource(BufferingHistoryEventHandler.this);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(BufferingHistoryEventHandler.this, buffer);
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            writeBatch(buffer);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(BufferingHistoryEventHandler.this);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.history;
+
+import io.holunda.camunda.example.caseinstancemigration.migration.domain.CamundaCaseExecution;
+import org.camunda.bpm.engine.impl.cmmn.entity.runtime.CaseExecutionEntity;
+
+/**
+ * Detached case instance carrying just the fields the case instance update event is produced from. It is never
+ * attached to the engine's entity cache, so it is neither flushed nor does it need another query.
+ */
+final class CaseInstanceSnapshot extends CaseExecutionEntity {
+
+    CaseInstanceSnapshot(CamundaCaseExecution caseInstance, String caseDefinitionId) {
+        this.id = caseInstance.getId();
+        this.caseInstanceId = caseInstance.getCaseInstanceId();
+        this.caseDefinitionId = caseDefinitionId;
+        this.businessKey = caseInstance.getBusinessKey();
+        this.tenantId = caseInstance.getTenantId();
+
+        if (caseInstance.getState() != null) {
+            setState(caseInstance.getState());
+        }
+    }
+}
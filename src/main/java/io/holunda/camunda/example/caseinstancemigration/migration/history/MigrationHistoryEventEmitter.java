@@ -0,0 +1,57 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.history;
+
+import io.holunda.camunda.example.caseinstancemigration.migration.domain.CamundaCaseExecution;
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.camunda.bpm.engine.impl.history.HistoryLevel;
+import org.camunda.bpm.engine.impl.history.event.HistoryEventTypes;
+import org.camunda.bpm.engine.impl.history.producer.DefaultCmmnHistoryEventProducer;
+import org.camunda.bpm.engine.impl.history.producer.DefaultHistoryEventProducer;
+import org.camunda.bpm.engine.impl.persistence.entity.TaskEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+/**
+ * Produces the history events of migrated case instances and tasks with one shared producer instance each and hands
+ * them to a {@link BufferingHistoryEventHandler}.
+ */
+@Component
+public class MigrationHistoryEventEmitter {
+
+    private final ProcessEngine processEngine;
+
+    private final BufferingHistoryEventHandler historyEventHandler;
+
+    private final DefaultCmmnHistoryEventProducer cmmnHistoryEventProducer = new DefaultCmmnHistoryEventProducer();
+
+    private final DefaultHistoryEventProducer historyEventProducer = new DefaultHistoryEventProducer();
+
+    public MigrationHistoryEventEmitter(ProcessEngine processEngine) {
+        this.processEngine = processEngine;
+        this.historyEventHandler = new BufferingHistoryEventHandler(processEngine);
+    }
+
+    /**
+     * Emits the update event of a migrated case instance from its (already loaded) row, so no engine query is needed.
+     */
+    public void emitCaseInstanceUpdate(final CamundaCaseExecution caseInstance, final String targetCaseDefId) {
+        Assert.notNull(caseInstance, "caseInstance is missing");
+        Assert.notNull(targetCaseDefId, "targetCaseDefId is missing");
+
+        if (getHistoryLevel().isHistoryEventProduced(HistoryEventTypes.CASE_INSTANCE_UPDATE, null)) {
+            historyEventHandler.handleEvent(cmmnHistoryEventProducer.createCaseInstanceUpdateEvt(new CaseInstanceSnapshot(caseInstance, targetCaseDefId)));
+        }
+    }
+
+    public void emitTaskMigrate(final TaskEntity task) {
+        Assert.notNull(task, "task is missing");
+
+        if (getHistoryLevel().isHistoryEventProduced(HistoryEventTypes.CASE_INSTANCE_UPDATE, null)) {
+            historyEventHandler.handleEvent(historyEventProducer.createTaskInstanceMigrateEvt(task));
+        }
+    }
+
+    private HistoryLevel getHistoryLevel() {
+        return ((ProcessEngineConfigurationImpl) processEngine.getProcessEngineConfiguration()).getHistoryLevel();
+    }
+}
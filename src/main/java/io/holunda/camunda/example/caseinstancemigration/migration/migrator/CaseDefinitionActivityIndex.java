@@ -0,0 +1,53 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.migrator;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+import org.camunda.bpm.engine.impl.cmmn.entity.repository.CaseDefinitionEntity;
+import org.camunda.bpm.engine.impl.cmmn.model.CmmnActivity;
+import org.springframework.util.Assert;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable index of the plan items of a case definition's case plan model by activity id, computed once per
+ * definition, so the activities missing in a case instance are a set difference instead of a scan per instance.
+ */
+public final class CaseDefinitionActivityIndex {
+
+    private final String caseDefinitionId;
+
+    private final ImmutableMap<String, CmmnActivity> activitiesById;
+
+    private CaseDefinitionActivityIndex(final String caseDefinitionId, final ImmutableMap<String, CmmnActivity> activitiesById) {
+        this.caseDefinitionId = caseDefinitionId;
+        this.activitiesById = activitiesById;
+    }
+
+    public static CaseDefinitionActivityIndex of(final CaseDefinitionEntity caseDefinition) {
+        Assert.notNull(caseDefinition, "caseDefinition is missing");
+
+        final ImmutableMap.Builder<String, CmmnActivity> activitiesById = ImmutableMap.builder();
+        caseDefinition.getActivities().get(0).getActivities().forEach(activity -> activitiesById.put(activity.getId(), activity));
+
+        return new CaseDefinitionActivityIndex(caseDefinition.getId(), activitiesById.build());
+    }
+
+    public String getCaseDefinitionId() {
+        return caseDefinitionId;
+    }
+
+    public Set<String> getActivityIds() {
+        return activitiesById.keySet();
+    }
+
+    /**
+     * @return activities of the case plan model not contained in the given activity ids, in model order.
+     */
+    public List<CmmnActivity> getMissingActivities(final Set<String> activityIds) {
+        Assert.notNull(activityIds, "activityIds is missing");
+
+        return ImmutableList.copyOf(Sets.difference(activitiesById.keySet(), activityIds).stream().map(activitiesById::get).iterator());
+    }
+}
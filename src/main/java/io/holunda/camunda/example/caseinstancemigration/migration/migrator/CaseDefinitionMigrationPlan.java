@@ -0,0 +1,68 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.migrator;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.holunda.camunda.example.caseinstancemigration.migration.migrator.steps.CaseExecutionBatchMigrationStep;
+import org.springframework.util.Assert;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Everything about migrating from one source to one target case definition that does not depend on the single case
+ * instance, built once per definition pair by {@link CaseDefinitionMigrationPlanCache} and reused for every chunk.
+ */
+public final class CaseDefinitionMigrationPlan {
+
+    private final String sourceCaseDefinitionId;
+
+    private final String targetCaseDefinitionId;
+
+    private final ImmutableList<CaseExecutionBatchMigrationStep> steps;
+
+    private final ImmutableMap<String, String> activityIdMapping;
+
+    CaseDefinitionMigrationPlan(final String sourceCaseDefinitionId,
+                                final String targetCaseDefinitionId,
+                                final List<CaseExecutionBatchMigrationStep> steps,
+                                final Map<String, String> activityIdMapping) {
+        Assert.notNull(sourceCaseDefinitionId, "sourceCaseDefinitionId is missing");
+        Assert.notNull(targetCaseDefinitionId, "targetCaseDefinitionId is missing");
+        Assert.notNull(steps, "steps is missing");
+        Assert.notNull(activityIdMapping, "activityIdMapping is missing");
+        this.sourceCaseDefinitionId = sourceCaseDefinitionId;
+        this.targetCaseDefinitionId = targetCaseDefinitionId;
+        this.steps = ImmutableList.copyOf(steps);
+        this.activityIdMapping = ImmutableMap.copyOf(activityIdMapping);
+    }
+
+    public String getSourceCaseDefinitionId() {
+        return sourceCaseDefinitionId;
+    }
+
+    public String getTargetCaseDefinitionId() {
+        return targetCaseDefinitionId;
+    }
+
+    /**
+     * @return migration steps not declaring themselves a no-op for this definition pair, in order.
+     */
+    public List<CaseExecutionBatchMigrationStep> getSteps() {
+        return steps;
+    }
+
+    /**
+     * @return activity ids of the source definition mapped to the renamed ones of the target definition, only
+     * containing ids the source definition actually has.
+     */
+    public Map<String, String> getActivityIdMapping() {
+        return activityIdMapping;
+    }
+
+    /**
+     * @return the target definition's id of the given source activity id, which is the same id if it is not renamed.
+     */
+    public String mapActivityId(final String activityId) {
+        return activityIdMapping.getOrDefault(activityId, activityId);
+    }
+}
@@ -0,0 +1,94 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.migrator;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.holunda.camunda.example.caseinstancemigration.migration.MigrationProperties;
+import io.holunda.camunda.example.caseinstancemigration.migration.migrator.steps.CaseExecutionBatchMigrationStep;
+import org.camunda.bpm.engine.RepositoryService;
+import org.camunda.bpm.engine.impl.cmmn.entity.repository.CaseDefinitionEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches one {@link CaseDefinitionMigrationPlan} per source and target case definition. Deployed case definitions
+ * never change, so a plan stays valid for the lifetime of the application.
+ */
+@Component
+public class CaseDefinitionMigrationPlanCache {
+
+    private final List<CaseExecutionBatchMigrationStep> caseExecutionMigrationSteps;
+
+    private final MigrationProperties properties;
+
+    private final RepositoryService repositoryService;
+
+    private final Map<List<String>, CaseDefinitionMigrationPlan> plans = new ConcurrentHashMap<>();
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CaseDefinitionMigrationPlanCache.class);
+
+    public CaseDefinitionMigrationPlanCache(List<CaseExecutionBatchMigrationStep> caseExecutionMigrationSteps,
+                                            MigrationProperties properties,
+                                            RepositoryService repositoryService) {
+        this.caseExecutionMigrationSteps = caseExecutionMigrationSteps;
+        this.properties = properties;
+        this.repositoryService = repositoryService;
+    }
+
+    public CaseDefinitionMigrationPlan get(final String sourceCaseDefId, final String targetCaseDefId) {
+        Assert.notNull(sourceCaseDefId, "sourceCaseDefId is missing");
+        Assert.notNull(targetCaseDefId, "targetCaseDefId is missing");
+
+        return plans.computeIfAbsent(ImmutableList.of(sourceCaseDefId, targetCaseDefId), pair -> createPlan(sourceCaseDefId, targetCaseDefId));
+    }
+
+    private CaseDefinitionMigrationPlan createPlan(final String sourceCaseDefId, final String targetCaseDefId) {
+        final CaseDefinitionMigrationPlan plan = new CaseDefinitionMigrationPlan(sourceCaseDefId, targetCaseDefId, ImmutableList.copyOf(caseExecutionMigrationSteps.stream()
+                .filter(step -> !step.isNoOpFor(sourceCaseDefId, targetCaseDefId))
+                .iterator()), compileActivityIdMapping(sourceCaseDefId, targetCaseDefId));
+
+        LOGGER.debug("Planned migration from '{}' to '{}' with {} steps and {} renamed activities",
+                sourceCaseDefId, targetCaseDefId, plan.getSteps().size(), plan.getActivityIdMapping().size());
+
+        return plan;
+    }
+
+    /**
+     * Restricts the activity id mapping configured for the case definition key to the activities of the source
+     * definition, so unmapped activities are a single hash lookup during migration.
+     */
+    private Map<String, String> compileActivityIdMapping(final String sourceCaseDefId, final String targetCaseDefId) {
+        if (properties.getActivityIdMappings().isEmpty()) {
+            return ImmutableMap.of();
+        }
+
+        final CaseDefinitionEntity sourceCaseDefinition = (CaseDefinitionEntity) repositoryService.getCaseDefinition(sourceCaseDefId);
+        final Map<String, String> configuredMapping = properties.getActivityIdMappings().getOrDefault(sourceCaseDefinition.getKey(), ImmutableMap.of());
+
+        if (configuredMapping.isEmpty()) {
+            return ImmutableMap.of();
+        }
+
+        final CaseDefinitionEntity targetCaseDefinition = (CaseDefinitionEntity) repositoryService.getCaseDefinition(targetCaseDefId);
+
+        final ImmutableMap.Builder<String, String> activityIdMapping = ImmutableMap.builder();
+        configuredMapping.forEach((sourceActivityId, targetActivityId) -> {
+            if (sourceCaseDefinition.findActivity(sourceActivityId) == null) {
+                LOGGER.debug("Activity '{}' not found in case definition '{}', not mapped", sourceActivityId, sourceCaseDefId);
+                return;
+            }
+            if (targetCaseDefinition.findActivity(targetActivityId) == null) {
+                throw new IllegalStateException(String.format("Activity '%s' mapped from '%s' not found in case definition '%s'",
+                        targetActivityId, sourceActivityId, targetCaseDefId));
+            }
+            activityIdMapping.put(sourceActivityId, targetActivityId);
+        });
+
+        return activityIdMapping.build();
+    }
+}
@@ -0,0 +1,106 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.migrator;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import io.holunda.camunda.example.caseinstancemigration.migration.domain.CamundaCaseExecutionRepository;
+import org.camunda.bpm.engine.CaseService;
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.camunda.bpm.engine.impl.cmmn.entity.runtime.CaseExecutionEntity;
+import org.camunda.bpm.engine.impl.cmmn.execution.CmmnExecution;
+import org.camunda.bpm.engine.impl.cmmn.model.CmmnActivity;
+import org.camunda.bpm.engine.impl.interceptor.Command;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Adds the activities of the case plan model a case instance has no execution for yet, chunk by chunk in their own
+ * transactions like {@link CaseInstanceMigrator}.
+ */
+@Component
+public class CaseInstanceActivityAdder {
+
+    private final CamundaCaseExecutionRepository camundaCaseExecutionRepository;
+
+    private final ProcessEngine processEngine;
+
+    private final CaseService caseService;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CaseInstanceActivityAdder.class);
+
+    public CaseInstanceActivityAdder(CamundaCaseExecutionRepository camundaCaseExecutionRepository,
+                                     ProcessEngine processEngine,
+                                     CaseService caseService) {
+        this.camundaCaseExecutionRepository = camundaCaseExecutionRepository;
+        this.processEngine = processEngine;
+        this.caseService = caseService;
+    }
+
+    /**
+     * Finds the case instances among the given ones missing an execution for any activity of the index, with one
+     * grouped query on the executions, so complete case instances are never loaded by the engine.
+     */
+    public List<String> findCaseInstancesMissingActivities(final List<String> caseInstanceIds, final CaseDefinitionActivityIndex activityIndex) {
+        Assert.notNull(caseInstanceIds, "caseInstanceIds is missing");
+        Assert.notNull(activityIndex, "activityIndex is missing");
+
+        if (caseInstanceIds.isEmpty() || activityIndex.getActivityIds().isEmpty()) {
+            return ImmutableList.of();
+        }
+
+        final Set<String> completeCaseInstanceIds = ImmutableSet.copyOf(camundaCaseExecutionRepository.findCaseInstanceIdsHavingAllActivities(
+                caseInstanceIds, activityIndex.getActivityIds(), activityIndex.getActivityIds().size()));
+
+        return ImmutableList.copyOf(caseInstanceIds.stream().filter(id -> !completeCaseInstanceIds.contains(id)).collect(Collectors.toList()));
+    }
+
+    /**
+     * Adds the missing activities to a chunk of case instances within one transaction, so either all or none of them
+     * get their new activities.
+     */
+    public void addNewActivities(final List<String> caseInstanceIds, final CaseDefinitionActivityIndex activityIndex) {
+        Assert.notNull(caseInstanceIds, "caseInstanceIds is missing");
+        Assert.notNull(activityIndex, "activityIndex is missing");
+
+        executeInNewTransaction(commandContext -> {
+            caseInstanceIds.forEach(caseInstanceId -> addNewActivitiesToCaseInstance(caseInstanceId, activityIndex));
+            return null;
+        });
+    }
+
+    private void addNewActivitiesToCaseInstance(final String caseInstanceId, final CaseDefinitionActivityIndex activityIndex) {
+        Assert.notNull(caseInstanceId, "caseInstanceId is missing");
+
+        final CaseExecutionEntity caseInstance = (CaseExecutionEntity) caseService.createCaseInstanceQuery().caseInstanceId(caseInstanceId).singleResult();
+
+        if (caseInstance == null) {
+            throw new IllegalStateException(String.format("Case instance '%s' not found", caseInstanceId));
+        }
+        if (!activityIndex.getCaseDefinitionId().equals(caseInstance.getCaseDefinitionId())) {
+            throw new IllegalStateException(String.format("Case instance '%s' is not an instance of '%s'", caseInstanceId, activityIndex.getCaseDefinitionId()));
+        }
+
+        Set<String> activityIds = caseInstance.getCaseExecutions().stream().map(CaseExecutionEntity::getActivityId).collect(Collectors.toSet());
+
+        List<CmmnActivity> newActivities = activityIndex.getMissingActivities(activityIds);
+
+        newActivities.forEach(a -> LOGGER.debug("Adding activity '{}' to case instance '{}'", a.getId(), caseInstanceId));
+
+        List<CmmnExecution> childExecutions = caseInstance.createChildExecutions(newActivities);
+        caseInstance.triggerChildExecutionsLifecycle(childExecutions);
+    }
+
+    /**
+     * Runs the command in a new transaction (REQUIRES_NEW) with its own engine command context, see
+     * {@link CaseInstanceMigrator}.
+     */
+    private <T> T executeInNewTransaction(final Command<T> command) {
+        return ((ProcessEngineConfigurationImpl) processEngine.getProcessEngineConfiguration()).getCommandExecutorTxRequiresNew().execute(command);
+    }
+}
@@ -0,0 +1,222 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.migrator;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.holunda.camunda.example.caseinstancemigration.migration.MigrationProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Worker pool migrating partitions of case instances in parallel. Every chunk of case instances is still migrated by
+ * {@link CaseInstanceMigrator} (or another chunk operation like {@link CaseInstanceActivityAdder}) in its own
+ * transaction, so every worker uses its own database connection.
+ */
+@Component
+public class CaseInstanceMigrationExecutor {
+
+    private final CaseInstanceMigrator migrator;
+
+    private final MigrationProperties properties;
+
+    private final MigrationThrottle throttle;
+
+    private ThreadPoolExecutor executor;
+
+    private boolean shutDown;
+
+    /**
+     * Milliseconds a producer blocked by a full queue waits for room before checking again whether the pool is shut down.
+     */
+    private static final long QUEUE_OFFER_TIMEOUT = 100;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CaseInstanceMigrationExecutor.class);
+
+    public CaseInstanceMigrationExecutor(CaseInstanceMigrator migrator,
+                                         MigrationProperties properties,
+                                         MigrationThrottle throttle) {
+        this.migrator = migrator;
+        this.properties = properties;
+        this.throttle = throttle;
+    }
+
+    public boolean isParallel() {
+        return properties.getParallel().isEnabled();
+    }
+
+    /**
+     * Submits one partition of case instances to the worker pool. Blocks or migrates on the calling thread, depending
+     * on the configured backpressure, if all workers are busy and the queue is full.
+     *
+     * @return future of the number of case instances that failed to migrate.
+     */
+    public Future<Integer> submitPartition(final List<String> caseInstanceIds, final String targetCaseDefId) {
+        return submitPartition(caseInstanceIds, targetCaseDefId, null);
+    }
+
+    /**
+     * Like {@link #submitPartition(List, String)}, but case instances failing on a lock conflict are added to the
+     * given retry queue (and counted as failed for now).
+     */
+    public Future<Integer> submitPartition(final List<String> caseInstanceIds, final String targetCaseDefId, final LockConflictRetryQueue retryQueue) {
+        Assert.notNull(caseInstanceIds, "caseInstanceIds is missing");
+        Assert.notNull(targetCaseDefId, "targetCaseDefId is missing");
+
+        return getExecutor().submit(() -> migratePartition(caseInstanceIds, targetCaseDefId, retryQueue));
+    }
+
+    /**
+     * Submits one partition of case instances to the worker pool, processing every chunk of it with the given
+     * operation, which has to run in its own transaction.
+     *
+     * @return future of the number of case instances that failed.
+     */
+    public Future<Integer> submitPartition(final List<String> caseInstanceIds, final Consumer<List<String>> chunkOperation) {
+        Assert.notNull(caseInstanceIds, "caseInstanceIds is missing");
+        Assert.notNull(chunkOperation, "chunkOperation is missing");
+
+        return getExecutor().submit(() -> migratePartition(caseInstanceIds, chunkOperation));
+    }
+
+    /**
+     * Migrates one partition of case instances on the calling thread, committing every
+     * {@link MigrationProperties#getCommitInterval()} case instances.
+     *
+     * @return number of case instances that failed to migrate.
+     */
+    public int migratePartition(final List<String> caseInstanceIds, final String targetCaseDefId) {
+        return migratePartition(caseInstanceIds, targetCaseDefId, null);
+    }
+
+    /**
+     * Like {@link #migratePartition(List, String)}, but case instances failing on a lock conflict are added to the
+     * given retry queue (and counted as failed for now).
+     */
+    public int migratePartition(final List<String> caseInstanceIds, final String targetCaseDefId, final LockConflictRetryQueue retryQueue) {
+        Assert.notNull(targetCaseDefId, "targetCaseDefId is missing");
+
+        return migratePartition(caseInstanceIds, chunk -> migrator.migrateCaseInstances(chunk, targetCaseDefId), retryQueue);
+    }
+
+    /**
+     * Processes one partition of case instances on the calling thread with the given operation, in chunks of
+     * {@link MigrationProperties#getCommitInterval()} case instances, at the rate of the {@link MigrationThrottle}.
+     *
+     * @return number of case instances that failed.
+     */
+    public int migratePartition(final List<String> caseInstanceIds, final Consumer<List<String>> chunkOperation) {
+        return migratePartition(caseInstanceIds, chunkOperation, null);
+    }
+
+    private int migratePartition(final List<String> caseInstanceIds, final Consumer<List<String>> chunkOperation, final LockConflictRetryQueue retryQueue) {
+        Assert.notNull(caseInstanceIds, "caseInstanceIds is missing");
+        Assert.notNull(chunkOperation, "chunkOperation is missing");
+
+        final int commitInterval = Math.max(1, properties.getCommitInterval());
+
+        int failed = 0;
+        for (List<String> chunk : Lists.partition(caseInstanceIds, commitInterval)) {
+            throttle.acquire(chunk.size());
+            final long start = System.nanoTime();
+            failed += migrateChunk(chunk, chunkOperation, retryQueue);
+            throttle.chunkCompleted(System.nanoTime() - start);
+        }
+        return failed;
+    }
+
+    /**
+     * Migrates the chunk in one transaction. If that fails, the chunk is split in halves which are migrated separately,
+     * so a single broken case instance does not roll back the others. A single case instance failing on a lock conflict
+     * is deferred to the retry queue, if any.
+     */
+    private int migrateChunk(final List<String> caseInstanceIds, final Consumer<List<String>> chunkOperation, final LockConflictRetryQueue retryQueue) {
+        try {
+            chunkOperation.accept(caseInstanceIds);
+            return 0;
+        } catch (Exception e) {
+            if (caseInstanceIds.size() == 1 && retryQueue != null && LockConflictRetryQueue.isLockConflict(e)) {
+                if (LOGGER.isWarnEnabled())
+                    LOGGER.warn(String.format("Lock conflict during migration of case instance '%s', deferring it to the retry queue: %s", caseInstanceIds.get(0), e.getMessage()));
+                retryQueue.add(caseInstanceIds.get(0));
+                return 1;
+            }
+
+            if (caseInstanceIds.size() == 1) {
+                LOGGER.error(String.format("Exception during migration of case instance '%s", caseInstanceIds.get(0)), e);
+                return 1;
+            }
+
+            if (LOGGER.isWarnEnabled())
+                LOGGER.warn(String.format("Exception during migration of a chunk of %d case instances, retrying in halves: %s", caseInstanceIds.size(), e.getMessage()));
+
+            final int half = caseInstanceIds.size() / 2;
+            return migrateChunk(caseInstanceIds.subList(0, half), chunkOperation, retryQueue)
+                    + migrateChunk(caseInstanceIds.subList(half, caseInstanceIds.size()), chunkOperation, retryQueue);
+        }
+    }
+
+    private synchronized ThreadPoolExecutor getExecutor() {
+        if (shutDown) {
+            throw new RejectedExecutionException("Migration worker pool is shut down");
+        }
+        if (executor == null) {
+            final MigrationProperties.Parallel parallel = properties.getParallel();
+            Assert.isTrue(parallel.getPoolSize() > 0, "poolSize must be positive");
+            Assert.isTrue(parallel.getQueueCapacity() > 0, "queueCapacity must be positive");
+
+            if (LOGGER.isInfoEnabled())
+                LOGGER.info(String.format("Starting %d migration workers with queue capacity %d and backpressure %s", parallel.getPoolSize(), parallel.getQueueCapacity(), parallel.getBackpressure()));
+
+            executor = new ThreadPoolExecutor(parallel.getPoolSize(), parallel.getPoolSize(), 60L, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(parallel.getQueueCapacity()),
+                    new ThreadFactoryBuilder().setNameFormat("case-migration-%d").setDaemon(true).build(),
+                    rejectedExecutionHandler(parallel.getBackpressure()));
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    private static RejectedExecutionHandler rejectedExecutionHandler(final MigrationProperties.Backpressure backpressure) {
+        if (backpressure == MigrationProperties.Backpressure.CALLER_RUNS) {
+            return new ThreadPoolExecutor.CallerRunsPolicy();
+        }
+        return (runnable, executor) -> {
+            try {
+                while (!executor.getQueue().offer(runnable, QUEUE_OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    if (executor.isShutdown()) {
+                        throw new RejectedExecutionException("Migration worker pool is shut down");
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for a free migration worker", e);
+            }
+            // the pool may have been shut down while offering, then no worker would ever take the partition
+            if (executor.isShutdown() && executor.getQueue().remove(runnable)) {
+                throw new RejectedExecutionException("Migration worker pool is shut down");
+            }
+        };
+    }
+
+    /**
+     * Stops the workers; partitions submitted afterwards, or still waiting for room in the queue, are rejected.
+     */
+    @PreDestroy
+    public synchronized void shutdown() {
+        shutDown = true;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
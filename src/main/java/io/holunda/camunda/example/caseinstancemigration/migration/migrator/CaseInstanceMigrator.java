@@ -1,27 +1,30 @@
 package io.holunda.camunda.example.caseinstancemigration.migration.migrator;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimaps;
+import io.holunda.camunda.example.caseinstancemigration.migration.MigrationProperties;
 import io.holunda.camunda.example.caseinstancemigration.migration.domain.CamundaCaseExecution;
 import io.holunda.camunda.example.caseinstancemigration.migration.domain.CamundaCaseExecutionRepository;
-import io.holunda.camunda.example.caseinstancemigration.migration.migrator.steps.CaseExecutionMigrationStep;
-import org.camunda.bpm.engine.CaseService;
+import io.holunda.camunda.example.caseinstancemigration.migration.history.MigrationHistoryEventEmitter;
+import io.holunda.camunda.example.caseinstancemigration.migration.migrator.steps.CaseExecutionBatchMigrationStep;
+import io.holunda.camunda.example.caseinstancemigration.migration.migrator.steps.CaseExecutionMigrationChunk;
 import org.camunda.bpm.engine.ProcessEngine;
 import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
-import org.camunda.bpm.engine.impl.cmmn.entity.runtime.CaseExecutionEntity;
-import org.camunda.bpm.engine.impl.history.HistoryLevel;
-import org.camunda.bpm.engine.impl.history.event.HistoryEvent;
-import org.camunda.bpm.engine.impl.history.event.HistoryEventTypes;
-import org.camunda.bpm.engine.impl.history.handler.HistoryEventHandler;
-import org.camunda.bpm.engine.impl.history.producer.DefaultCmmnHistoryEventProducer;
+import org.camunda.bpm.engine.impl.interceptor.Command;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Propagation;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
 
+import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Component
 public class CaseInstanceMigrator {
@@ -30,88 +33,243 @@ public class CaseInstanceMigrator {
 
     private final ProcessEngine processEngine;
 
-    private final CaseService caseService;
-
     private final TaskMigrator taskMigrator;
 
-    private final List<CaseExecutionMigrationStep> caseExecutionMigrationSteps;
+    private final List<CaseExecutionBatchMigrationStep> caseExecutionMigrationSteps;
+
+    private final MigrationProperties properties;
+
+    private final MigrationHistoryEventEmitter historyEventEmitter;
+
+    private final MigrationMetrics metrics;
+
+    private final MigrationSummaryLog summaryLog;
+
+    private final MigrationEntityWriter entityWriter;
+
+    private final CaseDefinitionMigrationPlanCache planCache;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(CaseInstanceMigrator.class);
 
     public CaseInstanceMigrator(CamundaCaseExecutionRepository camundaCaseExecutionRepository,
                                 ProcessEngine processEngine,
-                                CaseService caseService,
                                 TaskMigrator taskMigrator,
-                                List<CaseExecutionMigrationStep> caseExecutionMigrationSteps) {
+                                List<CaseExecutionBatchMigrationStep> caseExecutionMigrationSteps,
+                                MigrationProperties properties,
+                                MigrationHistoryEventEmitter historyEventEmitter,
+                                MigrationMetrics metrics,
+                                MigrationSummaryLog summaryLog,
+                                MigrationEntityWriter entityWriter,
+                                CaseDefinitionMigrationPlanCache planCache) {
         this.camundaCaseExecutionRepository = camundaCaseExecutionRepository;
         this.processEngine = processEngine;
-        this.caseService = caseService;
         this.taskMigrator = taskMigrator;
         this.caseExecutionMigrationSteps = caseExecutionMigrationSteps;
+        this.properties = properties;
+        this.historyEventEmitter = historyEventEmitter;
+        this.metrics = metrics;
+        this.summaryLog = summaryLog;
+        this.entityWriter = entityWriter;
+        this.planCache = planCache;
     }
 
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
-    public void migrateOneCaseInstance(final String caseInstanceId, final String targetCaseDefId) {
-        Assert.notNull(caseInstanceId, "caseInstanceId it missing");
+    /**
+     * @return true if bulk UPDATE mode is enabled and no migration step needs to see the single executions.
+     */
+    public boolean isBulkMigrationApplicable() {
+        return properties.isBulkUpdate() && caseExecutionMigrationSteps.stream().noneMatch(CaseExecutionBatchMigrationStep::requiresExecution);
+    }
+
+    /**
+     * Rewrites the case definition id of the next chunk of case instances still referencing the source definition
+     * using set-based UPDATE statements on executions and tasks.
+     *
+     * @param afterCaseInstanceId only case instances with a greater id are migrated, to skip those failed before;
+     *                            {@code null} to start with the first one.
+     * @return number of case instances migrated, 0 if no case instance is left on the source definition.
+     */
+    public int migrateNextCaseInstanceChunkInBulk(final String sourceCaseDefId, final String targetCaseDefId, final int chunkSize, final String afterCaseInstanceId) {
+        Assert.notNull(sourceCaseDefId, "sourceCaseDefId is missing");
         Assert.notNull(targetCaseDefId, "targetCaseDefId is missing");
+        Assert.isTrue(chunkSize > 0, "chunkSize must be positive");
 
-        if (LOGGER.isInfoEnabled()) {
-            LOGGER.info(String.format("Migrating case instance '%s'", caseInstanceId));
+        final long start = System.nanoTime();
+
+        final ChunkCounts counts = executeInNewTransaction(commandContext -> migrateCaseInstanceChunkInBulk(sourceCaseDefId, targetCaseDefId, chunkSize, afterCaseInstanceId));
+
+        if (counts.caseInstances > 0) {
+            summaryLog.chunkMigrated(counts.caseInstances, counts.executions, counts.tasks, System.nanoTime() - start);
         }
 
-        final List<CamundaCaseExecution> executionsToMigrate = ImmutableList.copyOf(camundaCaseExecutionRepository.findByCaseInstanceId(caseInstanceId));
+        return counts.caseInstances;
+    }
+
+    private ChunkCounts migrateCaseInstanceChunkInBulk(final String sourceCaseDefId, final String targetCaseDefId, final int chunkSize, final String afterCaseInstanceId) {
+        final List<String> caseInstanceIds = metrics.time(MigrationMetrics.Phase.LOOKUP, () -> findNextCaseInstanceChunk(sourceCaseDefId, chunkSize, afterCaseInstanceId));
 
-        if (LOGGER.isInfoEnabled()) {
-            LOGGER.info(String.format("Found %d executions for case instance '%s'", executionsToMigrate.size(), caseInstanceId));
+        if (caseInstanceIds.isEmpty()) {
+            return new ChunkCounts(0, 0, 0);
         }
 
-        executionsToMigrate.forEach(execution -> migrateOneExecution(execution, targetCaseDefId));
+        final List<CamundaCaseExecution> caseInstances = metrics.time(MigrationMetrics.Phase.LOOKUP, () ->
+                ImmutableList.copyOf(camundaCaseExecutionRepository.findCaseInstancesByCaseInstanceIds(caseInstanceIds)));
+
+        final Map<String, String> activityIdMapping = planCache.get(sourceCaseDefId, targetCaseDefId).getActivityIdMapping();
+
+        final int executionCount = metrics.time(MigrationMetrics.Phase.EXECUTION_UPDATE, () -> activityIdMapping.isEmpty()
+                ? camundaCaseExecutionRepository.updateCaseDefinitionId(sourceCaseDefId, targetCaseDefId, caseInstanceIds)
+                : entityWriter.updateCaseDefinitionIdAndActivityIds("CamundaCaseExecution", "activityId", sourceCaseDefId, targetCaseDefId, activityIdMapping, caseInstanceIds));
+
+        metrics.executionsMigrated(executionCount);
 
-        produceCaseInstanceHistoryEventsForOneCaseInstance(caseInstanceId);
+        LOGGER.debug("Migrated {} executions from '{}' in bulk", executionCount, sourceCaseDefId);
 
+        caseInstances.forEach(caseInstance -> produceCaseInstanceHistoryEvent(caseInstance, targetCaseDefId));
 
-        taskMigrator.migrateAllTasksForCaseInstance(caseInstanceId, targetCaseDefId);
+        final int taskCount = taskMigrator.migrateAllTasksForCaseInstancesInBulk(caseInstanceIds, sourceCaseDefId, targetCaseDefId);
+
+        return new ChunkCounts(caseInstanceIds.size(), executionCount, taskCount);
     }
 
-    private void migrateOneExecution(CamundaCaseExecution execution, final String targetCaseDefId) {
-        Assert.notNull(execution, "execution is missing");
-        Assert.notNull(targetCaseDefId, "targetCaseDefId is missing");
+    /**
+     * @return ids of the case instances the next call of {@link #migrateNextCaseInstanceChunkInBulk} migrates.
+     */
+    public List<String> findNextCaseInstanceChunk(final String sourceCaseDefId, final int chunkSize, final String afterCaseInstanceId) {
+        return ImmutableList.copyOf(afterCaseInstanceId != null
+                ? camundaCaseExecutionRepository.findCaseInstanceIdsByCaseDefinitionIdAfter(sourceCaseDefId, afterCaseInstanceId, new PageRequest(0, chunkSize))
+                : camundaCaseExecutionRepository.findCaseInstanceIdsByCaseDefinitionId(sourceCaseDefId, new PageRequest(0, chunkSize)));
+    }
 
-        if (LOGGER.isInfoEnabled())
-            LOGGER.info(String.format("Migrating execution '%s'", execution.getId()));
+    public void migrateOneCaseInstance(final String caseInstanceId, final String targetCaseDefId) {
+        Assert.notNull(caseInstanceId, "caseInstanceId it missing");
 
-        execution.setCaseDefinitionId(targetCaseDefId);
+        migrateCaseInstances(ImmutableList.of(caseInstanceId), targetCaseDefId);
+    }
 
-        final AtomicReference<CamundaCaseExecution> executionRef = new AtomicReference<>(execution);
+    /**
+     * Migrates a chunk of case instances within one transaction, so either all or none of them are migrated.
+     */
+    public void migrateCaseInstances(final List<String> caseInstanceIds, final String targetCaseDefId) {
+        Assert.notNull(caseInstanceIds, "caseInstanceIds is missing");
+        Assert.notNull(targetCaseDefId, "targetCaseDefId is missing");
 
-        caseExecutionMigrationSteps.forEach(step -> executionRef.set(step.migrate(executionRef.get())));
+        final long start = System.nanoTime();
 
-        camundaCaseExecutionRepository.save(executionRef.get());
+        final ChunkCounts counts = executeInNewTransaction(commandContext -> migrateCaseInstanceChunk(caseInstanceIds, targetCaseDefId));
+
+        summaryLog.chunkMigrated(counts.caseInstances, counts.executions, counts.tasks, System.nanoTime() - start);
     }
 
-    private void produceCaseInstanceHistoryEventsForOneCaseInstance(final String caseInstanceId) {
-        Assert.notNull(caseInstanceId, "caseInstanceId is missing");
+    /**
+     * Loads the executions of all case instances of the chunk still referencing another case definition at once, so
+     * rows migrated by an earlier (partial) run are neither loaded nor written again. The case instance rows among
+     * them are the snapshot the history events are produced from; a case instance already migrated gets none.
+     */
+    private ChunkCounts migrateCaseInstanceChunk(final List<String> caseInstanceIds, final String targetCaseDefId) {
+        final List<CamundaCaseExecution> staleExecutions = metrics.time(MigrationMetrics.Phase.LOOKUP, () ->
+                camundaCaseExecutionRepository.findByCaseInstanceIdInAndCaseDefinitionIdNot(caseInstanceIds, targetCaseDefId));
 
-        if (LOGGER.isInfoEnabled())
-            LOGGER.info(String.format("Creating history event for case instance '%s'", caseInstanceId));
+        final Map<String, CamundaCaseExecution> staleCaseInstances = Maps.uniqueIndex(
+                staleExecutions.stream().filter(CamundaCaseExecution::isCaseInstance).iterator(), CamundaCaseExecution::getCaseInstanceId);
 
-        final CaseExecutionEntity caseInstance = (CaseExecutionEntity) caseService.createCaseInstanceQuery().caseInstanceId(caseInstanceId).singleResult();
+        LOGGER.debug("Found {} stale executions of {} case instances", staleExecutions.size(), staleCaseInstances.size());
 
-        if (caseInstance == null) {
-            throw new IllegalStateException(String.format("Case instance '%s' not found", caseInstanceId));
-        }
+        assertCaseInstancesExist(caseInstanceIds.stream().filter(caseInstanceId -> !staleCaseInstances.containsKey(caseInstanceId)).collect(Collectors.toList()));
+
+        // Steps see the chunk per source case definition, following the cached plan of the definition pair
+        Multimaps.index(staleExecutions, CamundaCaseExecution::getCaseDefinitionId).asMap().forEach((sourceCaseDefId, executionsOfSource) ->
+                migrateExecutions(sourceCaseDefId, targetCaseDefId, executionsOfSource));
 
-        if (getHistoryLevel().isHistoryEventProduced(HistoryEventTypes.CASE_INSTANCE_UPDATE, null)) {
-            final HistoryEvent event = new DefaultCmmnHistoryEventProducer().createCaseInstanceUpdateEvt(caseInstance);
-            getHistoryEventHandler().handleEvent(event);
+        metrics.time(MigrationMetrics.Phase.EXECUTION_UPDATE, entityWriter::flushAndClear);
+
+        staleCaseInstances.values().forEach(caseInstance -> produceCaseInstanceHistoryEvent(caseInstance, targetCaseDefId));
+
+        final int taskCount = taskMigrator.migrateAllTasksForCaseInstances(caseInstanceIds, targetCaseDefId);
+
+        return new ChunkCounts(staleCaseInstances.size(), staleExecutions.size(), taskCount);
+    }
+
+    /**
+     * Case instances without a stale case instance row are either migrated already or do not exist at all.
+     */
+    private void assertCaseInstancesExist(final List<String> caseInstanceIds) {
+        if (caseInstanceIds.isEmpty()) {
+            return;
         }
+
+        final Set<String> existingCaseInstanceIds = ImmutableSet.copyOf(metrics.time(MigrationMetrics.Phase.LOOKUP, () ->
+                camundaCaseExecutionRepository.findCaseInstanceIdsByCaseInstanceIds(caseInstanceIds)));
+
+        caseInstanceIds.forEach(caseInstanceId -> {
+            if (!existingCaseInstanceIds.contains(caseInstanceId)) {
+                throw new IllegalStateException(String.format("Case instance '%s' not found", caseInstanceId));
+            }
+            LOGGER.debug("Case instance '{}' is already migrated", caseInstanceId);
+        });
     }
 
-    private HistoryEventHandler getHistoryEventHandler() {
-        return ((ProcessEngineConfigurationImpl) processEngine.getProcessEngineConfiguration()).getHistoryEventHandler();
+    private void migrateExecutions(final String sourceCaseDefId,
+                                   final String targetCaseDefId,
+                                   final Collection<CamundaCaseExecution> executions) {
+        final List<CamundaCaseExecution> caseInstances = ImmutableList.copyOf(executions.stream()
+                .filter(CamundaCaseExecution::isCaseInstance)
+                .iterator());
+
+        caseInstances.forEach(caseInstance -> LOGGER.debug("Migrating case instance '{}'", caseInstance.getCaseInstanceId()));
+
+        final CaseDefinitionMigrationPlan plan = planCache.get(sourceCaseDefId, targetCaseDefId);
+
+        executions.forEach(execution -> {
+            LOGGER.debug("Migrating execution '{}'", execution.getId());
+            execution.setCaseDefinitionId(targetCaseDefId);
+            execution.setActivityId(plan.mapActivityId(execution.getActivityId()));
+        });
+
+        final CaseExecutionMigrationChunk chunk = new CaseExecutionMigrationChunk(sourceCaseDefId, targetCaseDefId, caseInstances, ImmutableList.copyOf(executions));
+
+        plan.getSteps()
+                .forEach(step -> metrics.timeStep(ClassUtils.getUserClass(step).getSimpleName(), () -> step.migrate(chunk)));
+
+        metrics.time(MigrationMetrics.Phase.EXECUTION_UPDATE, () -> entityWriter.update(chunk.getExecutions()));
+
+        metrics.executionsMigrated(chunk.getExecutions().size());
     }
 
-    private HistoryLevel getHistoryLevel() {
-        return ((ProcessEngineConfigurationImpl) processEngine.getProcessEngineConfiguration()).getHistoryLevel();
+    private void produceCaseInstanceHistoryEvent(final CamundaCaseExecution caseInstance, final String targetCaseDefId) {
+        Assert.notNull(caseInstance, "caseInstance is missing");
+
+        LOGGER.debug("Creating history event for case instance '{}'", caseInstance.getCaseInstanceId());
+
+        metrics.time(MigrationMetrics.Phase.HISTORY, () -> historyEventEmitter.emitCaseInstanceUpdate(caseInstance, targetCaseDefId));
+    }
+
+    /**
+     * Runs the command in a new transaction (REQUIRES_NEW) with its own engine command context. Repository writes and
+     * engine writes like history events share its connection and are committed or rolled back together.
+     */
+    private <T> T executeInNewTransaction(final Command<T> command) {
+        return getProcessEngineConfiguration().getCommandExecutorTxRequiresNew().execute(command);
+    }
+
+    private ProcessEngineConfigurationImpl getProcessEngineConfiguration() {
+        return (ProcessEngineConfigurationImpl) processEngine.getProcessEngineConfiguration();
+    }
+
+    /**
+     * Number of case instances, executions and tasks migrated by one chunk.
+     */
+    private static final class ChunkCounts {
+
+        private final int caseInstances;
+
+        private final int executions;
+
+        private final int tasks;
+
+        private ChunkCounts(int caseInstances, int executions, int tasks) {
+            this.caseInstances = caseInstances;
+            this.executions = executions;
+            this.tasks = tasks;
+        }
     }
 }
@@ -0,0 +1,59 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.migrator;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.holunda.camunda.example.caseinstancemigration.migration.MigrationProperties;
+import org.camunda.bpm.engine.impl.cmmn.entity.repository.CaseDefinitionEntity;
+import org.camunda.bpm.engine.impl.context.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory cache of the latest case definition per key, so telling whether a case instance is on a stale case
+ * definition costs no query in the common case of an up-to-date one.
+ */
+@Component
+public class LatestCaseDefinitionCache {
+
+    private final Cache<String, CaseDefinitionEntity> latestCaseDefinitions;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LatestCaseDefinitionCache.class);
+
+    public LatestCaseDefinitionCache(MigrationProperties properties) {
+        this.latestCaseDefinitions = CacheBuilder.newBuilder()
+                .expireAfterWrite(properties.getLazy().getLatestDefinitionTtl(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * Must be called within a command context, which loads the latest case definition on a cache miss.
+     *
+     * @return latest case definition of the key, null if there is none.
+     */
+    public CaseDefinitionEntity get(final String caseDefinitionKey) {
+        Assert.notNull(caseDefinitionKey, "caseDefinitionKey is missing");
+
+        CaseDefinitionEntity latest = latestCaseDefinitions.getIfPresent(caseDefinitionKey);
+
+        if (latest == null) {
+            latest = Context.getCommandContext().getCaseDefinitionManager().findLatestCaseDefinitionByKey(caseDefinitionKey);
+
+            if (latest != null) {
+                latestCaseDefinitions.put(caseDefinitionKey, latest);
+                LOGGER.debug("Cached latest case definition '{}' of '{}'", latest.getId(), caseDefinitionKey);
+            }
+        }
+
+        return latest;
+    }
+
+    public void evict(final String caseDefinitionKey) {
+        Assert.notNull(caseDefinitionKey, "caseDefinitionKey is missing");
+
+        latestCaseDefinitions.invalidate(caseDefinitionKey);
+    }
+}
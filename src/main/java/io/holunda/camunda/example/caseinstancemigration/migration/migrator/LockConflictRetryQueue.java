@@ -0,0 +1,140 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.migrator;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import io.holunda.camunda.example.caseinstancemigration.migration.MigrationProperties;
+import org.camunda.bpm.engine.OptimisticLockingException;
+import org.hibernate.StaleStateException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.util.Assert;
+
+import javax.persistence.OptimisticLockException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Collects the case instances that failed on an optimistic lock conflict (a {@code REV_} changed by concurrent engine
+ * activity) during the main pass, and retries them one by one in rounds with jittered exponential backoff afterwards.
+ * Thread-safe, so the workers of a parallel migration can share one queue.
+ */
+public class LockConflictRetryQueue {
+
+    /**
+     * Outcome of the retry rounds.
+     */
+    public static final class Result {
+
+        private final int recovered;
+
+        private final List<String> failedCaseInstanceIds;
+
+        private Result(final int recovered, final List<String> failedCaseInstanceIds) {
+            this.recovered = recovered;
+            this.failedCaseInstanceIds = ImmutableList.copyOf(failedCaseInstanceIds);
+        }
+
+        /**
+         * @return number of case instances migrated by a retry.
+         */
+        public int getRecovered() {
+            return recovered;
+        }
+
+        /**
+         * @return case instances still failing after the last attempt or failing for another reason than a lock conflict.
+         */
+        public List<String> getFailedCaseInstanceIds() {
+            return failedCaseInstanceIds;
+        }
+    }
+
+    private final Queue<String> caseInstanceIds = new ConcurrentLinkedQueue<>();
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LockConflictRetryQueue.class);
+
+    public static boolean isLockConflict(final Throwable e) {
+        return Throwables.getCausalChain(e).stream().anyMatch(cause -> cause instanceof OptimisticLockException
+                || cause instanceof StaleStateException
+                || cause instanceof OptimisticLockingFailureException
+                || cause instanceof OptimisticLockingException);
+    }
+
+    public void add(final String caseInstanceId) {
+        Assert.notNull(caseInstanceId, "caseInstanceId is missing");
+        caseInstanceIds.add(caseInstanceId);
+    }
+
+    public boolean isEmpty() {
+        return caseInstanceIds.isEmpty();
+    }
+
+    /**
+     * Retries the queued case instances with the given operation, which has to run in its own transaction, until they
+     * succeed, fail for another reason or the attempts are exhausted.
+     */
+    public Result retry(final Consumer<List<String>> operation, final MigrationProperties.Retry retry) {
+        Assert.notNull(operation, "operation is missing");
+        Assert.notNull(retry, "retry is missing");
+
+        List<String> pending = drain();
+        final List<String> failed = new ArrayList<>();
+        int recovered = 0;
+        long backoff = retry.getInitialBackoff();
+
+        for (int attempt = 1; attempt <= retry.getMaxAttempts() && !pending.isEmpty(); attempt++) {
+            if (!sleep(ThreadLocalRandom.current().nextLong(backoff + 1))) {
+                break;
+            }
+
+            if (LOGGER.isInfoEnabled())
+                LOGGER.info(String.format("Retrying %d case instances after lock conflicts, attempt %d of %d", pending.size(), attempt, retry.getMaxAttempts()));
+
+            final List<String> conflicting = new ArrayList<>();
+            for (String caseInstanceId : pending) {
+                try {
+                    operation.accept(ImmutableList.of(caseInstanceId));
+                    recovered++;
+                } catch (Exception e) {
+                    if (isLockConflict(e)) {
+                        LOGGER.debug("Lock conflict again on case instance '{}'", caseInstanceId);
+                        conflicting.add(caseInstanceId);
+                    } else {
+                        LOGGER.error(String.format("Exception during retry of case instance '%s'", caseInstanceId), e);
+                        failed.add(caseInstanceId);
+                    }
+                }
+            }
+
+            pending = conflicting;
+            backoff = Math.min(backoff * 2, retry.getMaxBackoff());
+        }
+
+        failed.addAll(pending);
+        return new Result(recovered, failed);
+    }
+
+    private List<String> drain() {
+        final List<String> drained = new ArrayList<>();
+        String caseInstanceId;
+        while ((caseInstanceId = caseInstanceIds.poll()) != null) {
+            drained.add(caseInstanceId);
+        }
+        return drained;
+    }
+
+    private static boolean sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.migrator;
+
+import com.google.common.collect.ImmutableList;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.Assert;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Write path of the migrated executions and tasks. Their changes are flushed as JDBC batches (see
+ * {@code hibernate.jdbc.batch_size}, {@code order_updates} and {@code batch_versioned_data}), still checking the
+ * {@code REV_} of every row, and the persistence context is cleared afterwards, so it never holds more than the
+ * entities of one chunk.
+ */
+@Component
+public class MigrationEntityWriter {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Attaches entities a migration step replaced instead of changing in place; changed managed entities are written by
+     * the next {@link #flushAndClear()}.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void update(final Collection<?> entities) {
+        Assert.notNull(entities, "entities is missing");
+
+        entities.stream()
+                .filter(entity -> !entityManager.contains(entity))
+                .forEach(entityManager::merge);
+    }
+
+    /**
+     * Rewrites the case definition id of the given entities' rows of the case instances with one set-based UPDATE,
+     * renaming their activity ids in the same statement by a CASE over the mapping.
+     *
+     * @param entityName          JPQL entity name, like {@code CamundaCaseExecution}.
+     * @param activityIdAttribute attribute holding the activity id, like {@code activityId}.
+     * @return number of rows updated.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public int updateCaseDefinitionIdAndActivityIds(final String entityName,
+                                                    final String activityIdAttribute,
+                                                    final String sourceCaseDefId,
+                                                    final String targetCaseDefId,
+                                                    final Map<String, String> activityIdMapping,
+                                                    final Collection<String> caseInstanceIds) {
+        Assert.notNull(entityName, "entityName is missing");
+        Assert.notNull(activityIdAttribute, "activityIdAttribute is missing");
+        Assert.notEmpty(activityIdMapping, "activityIdMapping is missing");
+        Assert.notNull(caseInstanceIds, "caseInstanceIds is missing");
+
+        final List<Map.Entry<String, String>> mappings = ImmutableList.copyOf(activityIdMapping.entrySet());
+
+        final String activityId = "e." + activityIdAttribute;
+        final String cases = IntStream.range(0, mappings.size())
+                .mapToObj(i -> "when :sourceActivityId" + i + " then :targetActivityId" + i)
+                .collect(Collectors.joining(" "));
+
+        final Query update = entityManager.createQuery("update " + entityName + " e set e.caseDefinitionId = :targetCaseDefId, e.revision = e.revision + 1, " +
+                activityId + " = case " + activityId + " " + cases + " else " + activityId + " end " +
+                "where e.caseDefinitionId = :sourceCaseDefId and e.caseInstanceId in :caseInstanceIds")
+                .setParameter("sourceCaseDefId", sourceCaseDefId)
+                .setParameter("targetCaseDefId", targetCaseDefId)
+                .setParameter("caseInstanceIds", caseInstanceIds);
+
+        IntStream.range(0, mappings.size()).forEach(i -> update
+                .setParameter("sourceActivityId" + i, mappings.get(i).getKey())
+                .setParameter("targetActivityId" + i, mappings.get(i).getValue()));
+
+        return update.executeUpdate();
+    }
+
+    /**
+     * Sends all pending updates in JDBC batches and detaches the written entities.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void flushAndClear() {
+        entityManager.flush();
+        entityManager.clear();
+    }
+}
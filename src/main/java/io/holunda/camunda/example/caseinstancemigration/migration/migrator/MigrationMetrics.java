@@ -0,0 +1,167 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.migrator;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Micrometer meters of the migration pipeline, exported through the actuator (e.g. {@code /prometheus}):
+ * <ul>
+ * <li>{@code migration.case.instances} counter of case instances, tagged with {@code result} migrated, failed or
+ * recovered (failed on a lock conflict first, migrated by a retry)</li>
+ * <li>{@code migration.executions} and {@code migration.tasks} counters of written executions and tasks</li>
+ * <li>{@code migration.phase} timer per {@link Phase} and {@code migration.step} timer per migration step</li>
+ * <li>{@code migration.remaining}, {@code migration.throughput} (case instances per second) and
+ * {@code migration.eta} (seconds) gauges of the current run</li>
+ * </ul>
+ */
+@Component
+public class MigrationMetrics {
+
+    public enum Phase {
+        LOOKUP("lookup"),
+        EXECUTION_UPDATE("execution-update"),
+        HISTORY("history"),
+        TASK_UPDATE("task-update");
+
+        private final String tag;
+
+        Phase(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private final MeterRegistry meterRegistry;
+
+    private final Counter migratedCaseInstances;
+
+    private final Counter failedCaseInstances;
+
+    private final Counter recoveredCaseInstances;
+
+    private final Counter executions;
+
+    private final Counter tasks;
+
+    private final Map<Phase, Timer> phaseTimers = new EnumMap<>(Phase.class);
+
+    private final Map<String, Timer> stepTimers = new ConcurrentHashMap<>();
+
+    private volatile long runStartNanos;
+
+    private volatile long runTotal;
+
+    private volatile double runProcessedBaseline;
+
+    private int activeRuns;
+
+    public MigrationMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+
+        migratedCaseInstances = Counter.builder("migration.case.instances").tag("result", "migrated")
+                .description("Case instances migrated").register(meterRegistry);
+        failedCaseInstances = Counter.builder("migration.case.instances").tag("result", "failed")
+                .description("Case instances failed to migrate").register(meterRegistry);
+        recoveredCaseInstances = Counter.builder("migration.case.instances").tag("result", "recovered")
+                .description("Case instances migrated by a retry after a lock conflict").register(meterRegistry);
+        executions = Counter.builder("migration.executions").description("Case executions migrated").register(meterRegistry);
+        tasks = Counter.builder("migration.tasks").description("Tasks migrated").register(meterRegistry);
+
+        for (Phase phase : Phase.values()) {
+            phaseTimers.put(phase, Timer.builder("migration.phase").tag("phase", phase.tag)
+                    .description("Latency of a migration phase").register(meterRegistry));
+        }
+
+        Gauge.builder("migration.remaining", this, MigrationMetrics::getRemaining)
+                .description("Case instances left in the current run").register(meterRegistry);
+        Gauge.builder("migration.throughput", this, MigrationMetrics::getThroughput)
+                .description("Case instances processed per second in the current run").register(meterRegistry);
+        Gauge.builder("migration.eta", this, MigrationMetrics::getEta)
+                .description("Estimated seconds until the current run is completed").register(meterRegistry);
+    }
+
+    /**
+     * Starts a new run the throughput and ETA gauges refer to. Runs started while others are still active (e.g. of
+     * case definition keys migrated concurrently) join them, so the gauges cover all of them.
+     *
+     * @param totalCaseInstances number of case instances to process in this run.
+     */
+    public synchronized void startRun(final long totalCaseInstances) {
+        if (activeRuns++ == 0) {
+            runProcessedBaseline = getProcessed();
+            runTotal = 0;
+            runStartNanos = System.nanoTime();
+        }
+        runTotal += totalCaseInstances;
+    }
+
+    public synchronized void endRun() {
+        activeRuns = Math.max(0, activeRuns - 1);
+    }
+
+    public void caseInstancesMigrated(final int count) {
+        migratedCaseInstances.increment(count);
+    }
+
+    public void caseInstancesFailed(final int count) {
+        failedCaseInstances.increment(count);
+    }
+
+    public void caseInstancesRecovered(final int count) {
+        recoveredCaseInstances.increment(count);
+    }
+
+    public void executionsMigrated(final int count) {
+        executions.increment(count);
+    }
+
+    public void tasksMigrated(final int count) {
+        tasks.increment(count);
+    }
+
+    public <T> T time(final Phase phase, final Supplier<T> supplier) {
+        Assert.notNull(phase, "phase is missing");
+        return phaseTimers.get(phase).record(supplier);
+    }
+
+    public void time(final Phase phase, final Runnable runnable) {
+        Assert.notNull(phase, "phase is missing");
+        phaseTimers.get(phase).record(runnable);
+    }
+
+    public void timeStep(final String step, final Runnable runnable) {
+        Assert.notNull(step, "step is missing");
+        stepTimers.computeIfAbsent(step, s -> Timer.builder("migration.step").tag("step", s)
+                .description("Latency of a case execution migration step").register(meterRegistry)).record(runnable);
+    }
+
+    private double getProcessed() {
+        return migratedCaseInstances.count() + failedCaseInstances.count();
+    }
+
+    private double getRemaining() {
+        return Math.max(0, runTotal - (getProcessed() - runProcessedBaseline));
+    }
+
+    private double getThroughput() {
+        if (runStartNanos == 0) {
+            return 0;
+        }
+        final double elapsedSeconds = (System.nanoTime() - runStartNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+        return elapsedSeconds > 0 ? (getProcessed() - runProcessedBaseline) / elapsedSeconds : 0;
+    }
+
+    private double getEta() {
+        final double throughput = getThroughput();
+        return throughput > 0 ? getRemaining() / throughput : Double.NaN;
+    }
+}
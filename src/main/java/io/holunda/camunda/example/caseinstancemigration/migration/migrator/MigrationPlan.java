@@ -0,0 +1,132 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.migrator;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only report of what migrating the case instances of a case definition key to its latest version would touch,
+ * computed by {@link MigrationPlanner} without writing anything.
+ */
+public final class MigrationPlan {
+
+    /**
+     * What would be migrated from one source case definition.
+     */
+    public static final class Source {
+
+        private final String caseDefinitionId;
+
+        private final long caseInstances;
+
+        private final long executions;
+
+        private final long tasks;
+
+        public Source(final String caseDefinitionId, final long caseInstances, final long executions, final long tasks) {
+            Assert.notNull(caseDefinitionId, "caseDefinitionId is missing");
+            this.caseDefinitionId = caseDefinitionId;
+            this.caseInstances = caseInstances;
+            this.executions = executions;
+            this.tasks = tasks;
+        }
+
+        public String getCaseDefinitionId() {
+            return caseDefinitionId;
+        }
+
+        public long getCaseInstances() {
+            return caseInstances;
+        }
+
+        public long getExecutions() {
+            return executions;
+        }
+
+        public long getTasks() {
+            return tasks;
+        }
+    }
+
+    private final String caseDefinitionKey;
+
+    private final String targetCaseDefinitionId;
+
+    private final ImmutableList<Source> sources;
+
+    private final ImmutableMap<String, Long> activitiesToAdd;
+
+    private final Double throughput;
+
+    public MigrationPlan(final String caseDefinitionKey,
+                         final String targetCaseDefinitionId,
+                         final List<Source> sources,
+                         final Map<String, Long> activitiesToAdd,
+                         final Double throughput) {
+        Assert.notNull(caseDefinitionKey, "caseDefinitionKey is missing");
+        Assert.notNull(targetCaseDefinitionId, "targetCaseDefinitionId is missing");
+        Assert.notNull(sources, "sources is missing");
+        Assert.notNull(activitiesToAdd, "activitiesToAdd is missing");
+        this.caseDefinitionKey = caseDefinitionKey;
+        this.targetCaseDefinitionId = targetCaseDefinitionId;
+        this.sources = ImmutableList.copyOf(sources);
+        this.activitiesToAdd = ImmutableMap.copyOf(activitiesToAdd);
+        this.throughput = throughput;
+    }
+
+    public String getCaseDefinitionKey() {
+        return caseDefinitionKey;
+    }
+
+    public String getTargetCaseDefinitionId() {
+        return targetCaseDefinitionId;
+    }
+
+    /**
+     * @return source case definitions having case instances to migrate.
+     */
+    public List<Source> getSources() {
+        return sources;
+    }
+
+    /**
+     * @return activities {@code AddNewActivitiesCmd} would add after the migration, with the number of case instances
+     * each would be added to.
+     */
+    public Map<String, Long> getActivitiesToAdd() {
+        return activitiesToAdd;
+    }
+
+    public long getCaseInstances() {
+        return sources.stream().mapToLong(Source::getCaseInstances).sum();
+    }
+
+    public long getExecutions() {
+        return sources.stream().mapToLong(Source::getExecutions).sum();
+    }
+
+    public long getTasks() {
+        return sources.stream().mapToLong(Source::getTasks).sum();
+    }
+
+    /**
+     * @return case instances migrated per second by recent runs, {@code null} if there were none.
+     */
+    public Double getThroughput() {
+        return throughput;
+    }
+
+    /**
+     * @return expected duration of the migration at the throughput of recent runs, {@code null} if unknown.
+     */
+    public Duration getEstimatedDuration() {
+        if (throughput == null) {
+            return null;
+        }
+        return Duration.ofMillis((long) Math.ceil(getCaseInstances() * 1000 / throughput));
+    }
+}
@@ -0,0 +1,148 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.migrator;
+
+import io.holunda.camunda.example.caseinstancemigration.migration.domain.CamundaCaseExecutionRepository;
+import io.holunda.camunda.example.caseinstancemigration.migration.domain.CamundaTaskRepository;
+import io.holunda.camunda.example.caseinstancemigration.migration.domain.MigrationProgress;
+import io.holunda.camunda.example.caseinstancemigration.migration.domain.MigrationProgressRepository;
+import org.camunda.bpm.engine.RepositoryService;
+import org.camunda.bpm.engine.impl.cmmn.entity.repository.CaseDefinitionEntity;
+import org.camunda.bpm.engine.repository.CaseDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Computes a {@link MigrationPlan} with aggregate COUNT / GROUP BY queries over {@code ACT_RU_CASE_EXECUTION} and
+ * {@code ACT_RU_TASK}, so no entity is hydrated and nothing is written, whatever the number of case instances.
+ */
+@Component
+public class MigrationPlanner {
+
+    private final RepositoryService repositoryService;
+
+    private final CamundaCaseExecutionRepository camundaCaseExecutionRepository;
+
+    private final CamundaTaskRepository camundaTaskRepository;
+
+    private final MigrationProgressRepository migrationProgressRepository;
+
+    private final CaseDefinitionMigrationPlanCache planCache;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MigrationPlanner.class);
+
+    public MigrationPlanner(RepositoryService repositoryService,
+                            CamundaCaseExecutionRepository camundaCaseExecutionRepository,
+                            CamundaTaskRepository camundaTaskRepository,
+                            MigrationProgressRepository migrationProgressRepository,
+                            CaseDefinitionMigrationPlanCache planCache) {
+        this.repositoryService = repositoryService;
+        this.camundaCaseExecutionRepository = camundaCaseExecutionRepository;
+        this.camundaTaskRepository = camundaTaskRepository;
+        this.migrationProgressRepository = migrationProgressRepository;
+        this.planCache = planCache;
+    }
+
+    /**
+     * Plans the migration of all case instances of the given key to its latest case definition, followed by adding
+     * the activities of the latest case definition missing in them.
+     */
+    @Transactional(readOnly = true)
+    public MigrationPlan plan(final String caseDefinitionKey) {
+        Assert.notNull(caseDefinitionKey, "caseDefinitionKey is missing");
+
+        final CaseDefinition target = repositoryService.createCaseDefinitionQuery().caseDefinitionKey(caseDefinitionKey).latestVersion().singleResult();
+
+        if (target == null) {
+            throw new IllegalStateException("Could not determine latest case model version");
+        }
+
+        final List<String> allCaseDefIds = repositoryService.createCaseDefinitionQuery().caseDefinitionKey(caseDefinitionKey).list().stream()
+                .map(CaseDefinition::getId)
+                .collect(Collectors.toList());
+
+        final Map<String, Long> tasksByCaseDefId = new HashMap<>();
+        camundaTaskRepository.countTasksByCaseDefinitionIds(allCaseDefIds).forEach(row -> tasksByCaseDefId.put((String) row[0], (Long) row[1]));
+
+        final List<MigrationPlan.Source> sources = new ArrayList<>();
+        long caseInstances = 0;
+        for (Object[] row : camundaCaseExecutionRepository.countCaseInstancesAndExecutionsByCaseDefinitionIds(allCaseDefIds)) {
+            final String caseDefId = (String) row[0];
+            caseInstances += (Long) row[1];
+            if (!target.getId().equals(caseDefId)) {
+                sources.add(new MigrationPlan.Source(caseDefId, (Long) row[1], (Long) row[2], tasksByCaseDefId.getOrDefault(caseDefId, 0L)));
+            }
+        }
+
+        final MigrationPlan plan = new MigrationPlan(caseDefinitionKey, target.getId(), sources,
+                planActivitiesToAdd(target.getId(), allCaseDefIds, sources, caseInstances), recentThroughput());
+
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info(String.format("Planned migration of %d case instances with %d executions and %d tasks from %d case definitions to '%s', estimated duration %s",
+                    plan.getCaseInstances(), plan.getExecutions(), plan.getTasks(), sources.size(), target.getId(), plan.getEstimatedDuration()));
+        }
+
+        return plan;
+    }
+
+    /**
+     * After the migration all case instances belong to the target case definition, so every activity of it is added to
+     * the case instances not having an execution for it yet. Executions of a source definition count for the activity
+     * they are renamed to by the activity id mapping of that source and the target.
+     */
+    private Map<String, Long> planActivitiesToAdd(final String targetCaseDefId, final List<String> allCaseDefIds, final List<MigrationPlan.Source> sources, final long caseInstances) {
+        final CaseDefinitionActivityIndex activityIndex = CaseDefinitionActivityIndex.of((CaseDefinitionEntity) repositoryService.getCaseDefinition(targetCaseDefId));
+
+        final Map<String, CaseDefinitionMigrationPlan> plansByCaseDefId = new HashMap<>();
+        final Set<String> activityIds = new HashSet<>(activityIndex.getActivityIds());
+        sources.forEach(source -> {
+            final CaseDefinitionMigrationPlan plan = planCache.get(source.getCaseDefinitionId(), targetCaseDefId);
+            plansByCaseDefId.put(source.getCaseDefinitionId(), plan);
+            activityIds.addAll(plan.getActivityIdMapping().keySet());
+        });
+
+        final Map<String, Long> caseInstancesByActivityId = new HashMap<>();
+        camundaCaseExecutionRepository.countCaseInstancesByActivityIds(allCaseDefIds, activityIds).forEach(row -> {
+            final CaseDefinitionMigrationPlan plan = plansByCaseDefId.get((String) row[0]);
+            final String activityId = plan != null ? plan.mapActivityId((String) row[1]) : (String) row[1];
+            caseInstancesByActivityId.merge(activityId, (Long) row[2], Long::sum);
+        });
+
+        final Map<String, Long> activitiesToAdd = new LinkedHashMap<>();
+        activityIndex.getActivityIds().forEach(activityId -> {
+            final long missing = caseInstances - caseInstancesByActivityId.getOrDefault(activityId, 0L);
+            if (missing > 0) {
+                activitiesToAdd.put(activityId, missing);
+            }
+        });
+        return activitiesToAdd;
+    }
+
+    /**
+     * @return case instances per second migrated by the most recent completed runs, {@code null} if there were none.
+     */
+    private Double recentThroughput() {
+        long migrated = 0;
+        long millis = 0;
+        for (MigrationProgress progress : migrationProgressRepository.findTop10ByStateOrderByStartTimeDesc(MigrationProgress.State.COMPLETED)) {
+            migrated += progress.getMigrated();
+            millis += Duration.between(progress.getStartTime().toInstant(), progress.getUpdateTime().toInstant()).toMillis();
+        }
+
+        if (migrated == 0 || millis == 0) {
+            return null;
+        }
+        return migrated * 1000d / millis;
+    }
+}
@@ -0,0 +1,94 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.migrator;
+
+import io.holunda.camunda.example.caseinstancemigration.migration.MigrationProperties;
+import io.holunda.camunda.example.caseinstancemigration.migration.domain.MigrationProgress;
+import io.holunda.camunda.example.caseinstancemigration.migration.domain.MigrationProgressRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.Assert;
+
+import java.util.UUID;
+
+/**
+ * Records the progress of migration runs in the {@code MIGRATION_PROGRESS} table. Every write is committed in its own
+ * transaction, so checkpoints survive if the migration (or the whole node) dies halfway through.
+ */
+@Component
+public class MigrationProgressTracker {
+
+    private final MigrationProgressRepository migrationProgressRepository;
+
+    private final MigrationProperties properties;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MigrationProgressTracker.class);
+
+    public MigrationProgressTracker(MigrationProgressRepository migrationProgressRepository,
+                                    MigrationProperties properties) {
+        this.migrationProgressRepository = migrationProgressRepository;
+        this.properties = properties;
+    }
+
+    /**
+     * Starts tracking the migration from the source to the target case definition. An unfinished earlier run for the
+     * same definitions is resumed (and taken over by the given run), if enabled, instead of starting over.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public MigrationProgress start(final String runId, final String sourceCaseDefId, final String targetCaseDefId) {
+        Assert.notNull(runId, "runId is missing");
+        Assert.notNull(sourceCaseDefId, "sourceCaseDefId is missing");
+        Assert.notNull(targetCaseDefId, "targetCaseDefId is missing");
+
+        if (properties.isResume()) {
+            final MigrationProgress unfinished = migrationProgressRepository.findFirstBySourceCaseDefinitionIdAndTargetCaseDefinitionIdAndStateOrderByStartTimeDesc(
+                    sourceCaseDefId, targetCaseDefId, MigrationProgress.State.RUNNING);
+
+            if (unfinished != null) {
+                if (LOGGER.isInfoEnabled())
+                    LOGGER.info(String.format("Resuming migration run '%s' of '%s' after case instance '%s' (%d migrated, %d failed so far)",
+                            unfinished.getRunId(), sourceCaseDefId, unfinished.getLastCaseInstanceId(), unfinished.getMigrated(), unfinished.getFailed()));
+
+                unfinished.resume(runId);
+                return migrationProgressRepository.save(unfinished);
+            }
+        }
+
+        return migrationProgressRepository.save(new MigrationProgress(UUID.randomUUID().toString(), runId, sourceCaseDefId, targetCaseDefId));
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public MigrationProgress checkpoint(final String progressId, final String lastCaseInstanceId, final int migrated, final int failed) {
+        final MigrationProgress progress = getProgress(progressId);
+
+        progress.checkpoint(lastCaseInstanceId, migrated, failed);
+
+        return migrationProgressRepository.save(progress);
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public MigrationProgress complete(final String progressId) {
+        final MigrationProgress progress = getProgress(progressId);
+
+        progress.complete();
+
+        if (LOGGER.isInfoEnabled())
+            LOGGER.info(String.format("Completed migration run '%s' of '%s': %d migrated, %d failed",
+                    progress.getRunId(), progress.getSourceCaseDefinitionId(), progress.getMigrated(), progress.getFailed()));
+
+        return migrationProgressRepository.save(progress);
+    }
+
+    private MigrationProgress getProgress(final String progressId) {
+        Assert.notNull(progressId, "progressId is missing");
+
+        final MigrationProgress progress = migrationProgressRepository.findOne(progressId);
+
+        if (progress == null) {
+            throw new IllegalStateException(String.format("Migration progress '%s' not found", progressId));
+        }
+
+        return progress;
+    }
+}
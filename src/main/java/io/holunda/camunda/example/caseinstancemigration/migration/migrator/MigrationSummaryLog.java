@@ -0,0 +1,85 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.migrator;
+
+import io.holunda.camunda.example.caseinstancemigration.migration.MigrationProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Summarizes committed migration chunks in a single INFO line, either per chunk or once per configured interval, so
+ * the log volume does not grow with the number of migrated entities. Counts are accumulated in primitive fields, no
+ * objects are allocated per chunk.
+ */
+@Component
+public class MigrationSummaryLog {
+
+    private final MigrationProperties properties;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MigrationSummaryLog.class);
+
+    private long windowStart = System.nanoTime();
+
+    private long chunks;
+
+    private long caseInstances;
+
+    private long executions;
+
+    private long tasks;
+
+    private long failed;
+
+    private long chunkNanos;
+
+    public MigrationSummaryLog(MigrationProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Records a committed chunk and logs the summary if the interval has elapsed.
+     */
+    public synchronized void chunkMigrated(final int caseInstanceCount, final int executionCount, final int taskCount, final long durationNanos) {
+        chunks++;
+        caseInstances += caseInstanceCount;
+        executions += executionCount;
+        tasks += taskCount;
+        chunkNanos += durationNanos;
+
+        final long now = System.nanoTime();
+        if (now - windowStart >= TimeUnit.SECONDS.toNanos(properties.getSummaryLogInterval())) {
+            log(now);
+        }
+    }
+
+    /**
+     * Records case instances that failed to migrate, logged with the next summary.
+     */
+    public synchronized void caseInstancesFailed(final int caseInstanceCount) {
+        failed += caseInstanceCount;
+    }
+
+    /**
+     * Logs what has been accumulated since the last summary, e.g. at the end of a migration run.
+     */
+    public synchronized void flush() {
+        if (chunks > 0 || failed > 0) {
+            log(System.nanoTime());
+        }
+    }
+
+    private void log(final long now) {
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Migrated {} case instances with {} executions and {} tasks in {} chunks, {} case instances failed ({} ms in transactions, {} ms elapsed)",
+                    caseInstances, executions, tasks, chunks, failed, TimeUnit.NANOSECONDS.toMillis(chunkNanos), TimeUnit.NANOSECONDS.toMillis(now - windowStart));
+        }
+        windowStart = now;
+        chunks = 0;
+        caseInstances = 0;
+        executions = 0;
+        tasks = 0;
+        failed = 0;
+        chunkNanos = 0;
+    }
+}
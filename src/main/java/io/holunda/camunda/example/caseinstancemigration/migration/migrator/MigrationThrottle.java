@@ -0,0 +1,205 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.migrator;
+
+import com.google.common.util.concurrent.RateLimiter;
+import io.holunda.camunda.example.caseinstancemigration.migration.MigrationProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.tomcat.jdbc.pool.DataSourceProxy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Method;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * Limits the rate of the migration to case instances per second, if {@link MigrationProperties.Throttle#isEnabled()}.
+ * The rate adapts to the database load (additive increase, multiplicative decrease): it is reduced by the decrease
+ * factor after every chunk whose migration took longer than the commit latency threshold or which finished while more
+ * threads than the connection wait threshold were waiting for a pooled connection, and increased by the increase step
+ * after every other chunk, always within the minimum and maximum rate.
+ * <p>
+ * The connection wait is read from a Hikari pool ({@code threadsAwaitingConnection}) or a tomcat-jdbc pool
+ * ({@code waitCount}), whichever is on the classpath and backs the data source; neither is a required dependency.
+ * <p>
+ * The current rate is exported as gauge {@code migration.throttle.rate}.
+ */
+@Component
+public class MigrationThrottle {
+
+    private final MigrationProperties.Throttle settings;
+
+    private final IntSupplier connectionWaiters;
+
+    private final RateLimiter rateLimiter;
+
+    private double rate;
+
+    private static final String HIKARI_DATA_SOURCE = "com.zaxxer.hikari.HikariDataSource";
+
+    private static final String HIKARI_POOL_MX_BEAN = "com.zaxxer.hikari.HikariPoolMXBean";
+
+    private static final String TOMCAT_DATA_SOURCE = "org.apache.tomcat.jdbc.pool.DataSourceProxy";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MigrationThrottle.class);
+
+    public MigrationThrottle(MigrationProperties properties,
+                             DataSource dataSource,
+                             MeterRegistry meterRegistry) {
+        this.settings = properties.getThrottle();
+        this.connectionWaiters = connectionWaiters(dataSource);
+        this.rate = settings.getMaxRate();
+        this.rateLimiter = RateLimiter.create(rate);
+
+        Gauge.builder("migration.throttle.rate", this, MigrationThrottle::getRate)
+                .description("Case instances per second the migration is limited to").register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return settings.isEnabled();
+    }
+
+    /**
+     * Blocks until the given number of case instances may be migrated at the current rate.
+     */
+    public void acquire(final int caseInstances) {
+        if (!isEnabled() || caseInstances <= 0) {
+            return;
+        }
+        // clamps the rate to limits changed through the properties
+        getRate();
+        rateLimiter.acquire(caseInstances);
+    }
+
+    /**
+     * Adapts the rate to the time the last chunk took to migrate and commit and to the current connection pool wait.
+     */
+    public synchronized void chunkCompleted(final long elapsedNanos) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        final int connectionWaiters = getConnectionWaiters();
+
+        if (elapsedMillis > settings.getCommitLatencyThreshold() || connectionWaiters > settings.getConnectionWaitThreshold()) {
+            final double previousRate = rate;
+            setRate(rate * settings.getDecreaseFactor());
+
+            if (LOGGER.isInfoEnabled() && rate < previousRate)
+                LOGGER.info(String.format("Chunk took %d ms with %d threads waiting for a connection, reducing migration rate to %.1f case instances per second", elapsedMillis, connectionWaiters, rate));
+        } else {
+            setRate(rate + settings.getIncreaseStep());
+        }
+    }
+
+    /**
+     * @return case instances per second the migration is currently limited to.
+     */
+    public synchronized double getRate() {
+        if (rate > settings.getMaxRate() || rate < settings.getMinRate()) {
+            setRate(rate);
+        }
+        return rate;
+    }
+
+    /**
+     * Changes the limits at runtime, {@code null} keeps the current value. The rate is clamped to the new bounds.
+     */
+    public synchronized void updateLimits(final Double minRate, final Double maxRate, final Long commitLatencyThreshold, final Integer connectionWaitThreshold) {
+        final double newMinRate = minRate != null ? minRate : settings.getMinRate();
+        final double newMaxRate = maxRate != null ? maxRate : settings.getMaxRate();
+        Assert.isTrue(newMinRate > 0, "minRate must be positive");
+        Assert.isTrue(newMinRate <= newMaxRate, "minRate must not exceed maxRate");
+
+        settings.setMinRate(newMinRate);
+        settings.setMaxRate(newMaxRate);
+        if (commitLatencyThreshold != null) {
+            settings.setCommitLatencyThreshold(commitLatencyThreshold);
+        }
+        if (connectionWaitThreshold != null) {
+            settings.setConnectionWaitThreshold(connectionWaitThreshold);
+        }
+        setRate(rate);
+
+        if (LOGGER.isInfoEnabled())
+            LOGGER.info(String.format("Migration rate limited to %.1f - %.1f case instances per second, currently %.1f", newMinRate, newMaxRate, rate));
+    }
+
+    /**
+     * @return threads currently waiting for a pooled connection, {@code 0} if the pool does not tell.
+     */
+    public int getConnectionWaiters() {
+        return connectionWaiters.getAsInt();
+    }
+
+    private static IntSupplier connectionWaiters(final DataSource dataSource) {
+        final ClassLoader classLoader = MigrationThrottle.class.getClassLoader();
+
+        if (ClassUtils.isPresent(HIKARI_DATA_SOURCE, classLoader)) {
+            final Object hikariDataSource = unwrap(dataSource, ClassUtils.resolveClassName(HIKARI_DATA_SOURCE, classLoader));
+            if (hikariDataSource != null) {
+                return HikariConnectionWaiters.of(hikariDataSource, classLoader);
+            }
+        }
+        if (ClassUtils.isPresent(TOMCAT_DATA_SOURCE, classLoader)) {
+            final Object tomcatDataSource = unwrap(dataSource, ClassUtils.resolveClassName(TOMCAT_DATA_SOURCE, classLoader));
+            if (tomcatDataSource != null) {
+                return TomcatConnectionWaiters.of(tomcatDataSource);
+            }
+        }
+
+        LOGGER.warn(String.format("Connection pool of %s not supported, the migration throttle only backs off on the commit latency", dataSource.getClass().getName()));
+        return () -> 0;
+    }
+
+    private static Object unwrap(final DataSource dataSource, final Class<?> type) {
+        if (type.isInstance(dataSource)) {
+            return dataSource;
+        }
+        try {
+            return dataSource.isWrapperFor(type) ? dataSource.unwrap(type) : null;
+        } catch (SQLException e) {
+            LOGGER.debug("Could not unwrap {} from the data source", type.getName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads {@code HikariDataSource#getHikariPoolMXBean().getThreadsAwaitingConnection()} reflectively, so Hikari is
+     * not a compile time dependency. The pool is {@code null} until the first connection is requested.
+     */
+    private static final class HikariConnectionWaiters {
+
+        static IntSupplier of(final Object hikariDataSource, final ClassLoader classLoader) {
+            final Method getPool = ReflectionUtils.findMethod(hikariDataSource.getClass(), "getHikariPoolMXBean");
+            final Method getWaiters = ReflectionUtils.findMethod(ClassUtils.resolveClassName(HIKARI_POOL_MX_BEAN, classLoader), "getThreadsAwaitingConnection");
+            return () -> {
+                final Object pool = ReflectionUtils.invokeMethod(getPool, hikariDataSource);
+                return pool != null ? (Integer) ReflectionUtils.invokeMethod(getWaiters, pool) : 0;
+            };
+        }
+    }
+
+    /**
+     * Only loaded if tomcat-jdbc is on the classpath.
+     */
+    private static final class TomcatConnectionWaiters {
+
+        static IntSupplier of(final Object tomcatDataSource) {
+            final DataSourceProxy pool = (DataSourceProxy) tomcatDataSource;
+            return pool::getWaitCount;
+        }
+    }
+
+    private void setRate(final double newRate) {
+        rate = Math.max(settings.getMinRate(), Math.min(settings.getMaxRate(), newRate));
+        rateLimiter.setRate(rate);
+    }
+}
@@ -0,0 +1,64 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.migrator;
+
+import org.springframework.util.Assert;
+
+/**
+ * Lease of a partition held by this node, as acquired or last renewed by the {@link PartitionLeaseManager}. The
+ * partition is the range of case instance ids after {@link #getAfterCaseInstanceId()} up to
+ * {@link #getUpToCaseInstanceId()}, either of them null if the range is open on that side.
+ */
+public final class PartitionLease {
+
+    private final String id;
+
+    private final String targetCaseDefinitionId;
+
+    private final int partition;
+
+    private final String afterCaseInstanceId;
+
+    private final String upToCaseInstanceId;
+
+    private final Integer revision;
+
+    PartitionLease(final String id, final String targetCaseDefinitionId, final int partition,
+                   final String afterCaseInstanceId, final String upToCaseInstanceId, final Integer revision) {
+        Assert.notNull(id, "id is missing");
+        Assert.notNull(targetCaseDefinitionId, "targetCaseDefinitionId is missing");
+        Assert.notNull(revision, "revision is missing");
+        this.id = id;
+        this.targetCaseDefinitionId = targetCaseDefinitionId;
+        this.partition = partition;
+        this.afterCaseInstanceId = afterCaseInstanceId;
+        this.upToCaseInstanceId = upToCaseInstanceId;
+        this.revision = revision;
+    }
+
+    PartitionLease withRevision(final Integer revision) {
+        return new PartitionLease(id, targetCaseDefinitionId, partition, afterCaseInstanceId, upToCaseInstanceId, revision);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getTargetCaseDefinitionId() {
+        return targetCaseDefinitionId;
+    }
+
+    public int getPartition() {
+        return partition;
+    }
+
+    public String getAfterCaseInstanceId() {
+        return afterCaseInstanceId;
+    }
+
+    public String getUpToCaseInstanceId() {
+        return upToCaseInstanceId;
+    }
+
+    Integer getRevision() {
+        return revision;
+    }
+}
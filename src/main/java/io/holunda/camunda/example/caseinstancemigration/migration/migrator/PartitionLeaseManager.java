@@ -0,0 +1,256 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.migrator;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.holunda.camunda.example.caseinstancemigration.migration.MigrationProperties;
+import io.holunda.camunda.example.caseinstancemigration.migration.domain.MigrationPartitionLease;
+import io.holunda.camunda.example.caseinstancemigration.migration.domain.MigrationPartitionLeaseRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+import javax.annotation.PreDestroy;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Leases partitions, ranges of the ids of the case instances to migrate, from the {@code MIGRATION_PARTITION_LEASE}
+ * table, so several nodes share a migration without migrating the same case instance. Held leases are renewed by a heartbeat; a lease
+ * not renewed in time is stolen by the next node acquiring. Every lease write is committed in its own transaction, so
+ * other nodes see it at once.
+ */
+@Component
+public class PartitionLeaseManager {
+
+    private final MigrationPartitionLeaseRepository leaseRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final String nodeId;
+
+    private final long leaseDuration;
+
+    private final long heartbeatInterval;
+
+    private final Map<String, PartitionLease> heldLeases = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("case-migration-lease-heartbeat-%d").setDaemon(true).build());
+
+    private boolean heartbeatStarted;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionLeaseManager.class);
+
+    @Autowired
+    public PartitionLeaseManager(MigrationPartitionLeaseRepository leaseRepository,
+                                 PlatformTransactionManager transactionManager,
+                                 MigrationProperties properties) {
+        this(leaseRepository, transactionManager,
+                properties.getSharding().getNodeId() != null ? properties.getSharding().getNodeId() : UUID.randomUUID().toString(),
+                properties.getSharding().getLeaseDuration(),
+                properties.getSharding().getHeartbeatInterval());
+    }
+
+    /**
+     * @param nodeId            owner recorded on the leases acquired.
+     * @param leaseDuration     milliseconds a lease is valid without renewal.
+     * @param heartbeatInterval milliseconds between renewals of the held leases.
+     */
+    public PartitionLeaseManager(MigrationPartitionLeaseRepository leaseRepository,
+                                 PlatformTransactionManager transactionManager,
+                                 String nodeId,
+                                 long leaseDuration,
+                                 long heartbeatInterval) {
+        Assert.notNull(nodeId, "nodeId is missing");
+        Assert.isTrue(heartbeatInterval > 0 && heartbeatInterval < leaseDuration, "heartbeatInterval must be positive and below leaseDuration");
+        this.leaseRepository = leaseRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.nodeId = nodeId;
+        this.leaseDuration = leaseDuration;
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Creates the open leases of all partitions of the target case definition, unless another node already did. If all
+     * partitions were completed by an earlier run, they are opened again for the case instances left over.
+     *
+     * @param boundaries supplies the ascending case instance ids splitting the ids into ranges, the last id of every
+     *                   partition but the last one; only called by the node creating the partitions.
+     */
+    public void openPartitions(final String targetCaseDefId, final Supplier<List<String>> boundaries) {
+        Assert.notNull(targetCaseDefId, "targetCaseDefId is missing");
+        Assert.notNull(boundaries, "boundaries is missing");
+
+        try {
+            transactionTemplate.execute(status -> {
+                final long existing = leaseRepository.countByTargetCaseDefinitionId(targetCaseDefId);
+                if (existing == 0) {
+                    final List<String> upTo = boundaries.get();
+                    final int partitions = upTo.size() + 1;
+                    leaseRepository.save(IntStream.range(0, partitions)
+                            .mapToObj(partition -> new MigrationPartitionLease(UUID.randomUUID().toString(), targetCaseDefId, partition, partitions,
+                                    partition > 0 ? upTo.get(partition - 1) : null,
+                                    partition < upTo.size() ? upTo.get(partition) : null))
+                            .collect(Collectors.toList()));
+                    leaseRepository.flush();
+                } else if (leaseRepository.countByTargetCaseDefinitionIdAndState(targetCaseDefId, MigrationPartitionLease.State.OPEN) == 0) {
+                    if (LOGGER.isInfoEnabled())
+                        LOGGER.info(String.format("Reopening %d completed partitions of '%s'", existing, targetCaseDefId));
+
+                    leaseRepository.updateState(targetCaseDefId, MigrationPartitionLease.State.OPEN, new Date());
+                }
+                return null;
+            });
+        } catch (DataIntegrityViolationException e) {
+            LOGGER.debug("Partitions of '{}' created by another node", targetCaseDefId);
+        }
+    }
+
+    /**
+     * Acquires an open partition of the target case definition that is not leased or whose lease expired.
+     *
+     * @return the lease, renewed by the heartbeat from now on, or null if no partition is available right now.
+     */
+    public PartitionLease acquire(final String targetCaseDefId) {
+        Assert.notNull(targetCaseDefId, "targetCaseDefId is missing");
+
+        final PartitionLease lease = transactionTemplate.execute(status -> {
+            final Date now = new Date();
+            for (MigrationPartitionLease candidate : leaseRepository.findAcquirable(targetCaseDefId, MigrationPartitionLease.State.OPEN, now)) {
+                if (leaseRepository.acquire(candidate.getId(), candidate.getRevision(), nodeId, new Date(now.getTime() + leaseDuration), now) == 1) {
+                    if (candidate.getOwner() != null && LOGGER.isInfoEnabled())
+                        LOGGER.info(String.format("Node '%s' stole partition %d of '%s' from node '%s' whose lease expired at %s",
+                                nodeId, candidate.getPartition(), targetCaseDefId, candidate.getOwner(), candidate.getExpirationTime()));
+
+                    return new PartitionLease(candidate.getId(), targetCaseDefId, candidate.getPartition(),
+                            candidate.getAfterCaseInstanceId(), candidate.getUpToCaseInstanceId(), candidate.getRevision() + 1);
+                }
+            }
+            return null;
+        });
+
+        if (lease != null) {
+            heldLeases.put(lease.getId(), lease);
+            startHeartbeat();
+            LOGGER.debug("Node '{}' acquired partition {} of '{}'", nodeId, lease.getPartition(), targetCaseDefId);
+        }
+
+        return lease;
+    }
+
+    /**
+     * @return false if the lease was lost to another node, which then migrates the partition.
+     */
+    public boolean isHeld(final PartitionLease lease) {
+        Assert.notNull(lease, "lease is missing");
+
+        return heldLeases.containsKey(lease.getId());
+    }
+
+    /**
+     * @return true if all partitions of the target case definition are migrated.
+     */
+    public boolean isCompleted(final String targetCaseDefId) {
+        Assert.notNull(targetCaseDefId, "targetCaseDefId is missing");
+
+        return leaseRepository.countByTargetCaseDefinitionIdAndState(targetCaseDefId, MigrationPartitionLease.State.OPEN) == 0;
+    }
+
+    /**
+     * Marks the partition migrated and releases the lease.
+     *
+     * @return false if the lease was lost in the meantime, so the partition stays open for its new owner.
+     */
+    public synchronized boolean complete(final PartitionLease lease, final long migrated, final long failed) {
+        Assert.notNull(lease, "lease is missing");
+
+        final PartitionLease held = heldLeases.remove(lease.getId());
+
+        final boolean completed = held != null && transactionTemplate.execute(status ->
+                leaseRepository.complete(held.getId(), held.getRevision(), nodeId, MigrationPartitionLease.State.COMPLETED, migrated, failed, new Date()) == 1);
+
+        if (!completed) {
+            LOGGER.warn(String.format("Node '%s' lost the lease of partition %d of '%s' before completing it",
+                    nodeId, lease.getPartition(), lease.getTargetCaseDefinitionId()));
+        }
+
+        return completed;
+    }
+
+    /**
+     * Releases the lease without completing the partition, so any node acquires it at once instead of waiting for the
+     * lease to expire.
+     *
+     * @return false if the lease was lost in the meantime, so the partition already has a new owner.
+     */
+    public synchronized boolean release(final PartitionLease lease) {
+        Assert.notNull(lease, "lease is missing");
+
+        final PartitionLease held = heldLeases.remove(lease.getId());
+
+        final boolean released = held != null && transactionTemplate.execute(status ->
+                leaseRepository.release(held.getId(), held.getRevision(), nodeId, new Date()) == 1);
+
+        if (!released) {
+            LOGGER.warn(String.format("Node '%s' lost the lease of partition %d of '%s' before releasing it",
+                    nodeId, lease.getPartition(), lease.getTargetCaseDefinitionId()));
+        }
+
+        return released;
+    }
+
+    /**
+     * Renews all held leases. A lease failing to renew was stolen after it expired and is dropped.
+     */
+    synchronized void renewHeldLeases() {
+        heldLeases.values().forEach(lease -> {
+            final Date now = new Date();
+            final boolean renewed = transactionTemplate.execute(status ->
+                    leaseRepository.renew(lease.getId(), lease.getRevision(), nodeId, new Date(now.getTime() + leaseDuration), now) == 1);
+
+            if (renewed) {
+                heldLeases.put(lease.getId(), lease.withRevision(lease.getRevision() + 1));
+            } else {
+                heldLeases.remove(lease.getId());
+                LOGGER.warn(String.format("Node '%s' lost the lease of partition %d of '%s'", nodeId, lease.getPartition(), lease.getTargetCaseDefinitionId()));
+            }
+        });
+    }
+
+    private synchronized void startHeartbeat() {
+        if (!heartbeatStarted) {
+            heartbeat.scheduleWithFixedDelay(() -> {
+                try {
+                    renewHeldLeases();
+                } catch (RuntimeException e) {
+                    LOGGER.error(String.format("Exception while renewing the leases of node '%s'", nodeId), e);
+                }
+            }, heartbeatInterval, heartbeatInterval, TimeUnit.MILLISECONDS);
+            heartbeatStarted = true;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeat.shutdownNow();
+    }
+}
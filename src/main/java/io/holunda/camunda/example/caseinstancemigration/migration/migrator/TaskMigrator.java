@@ -1,17 +1,16 @@
 package io.holunda.camunda.example.caseinstancemigration.migration.migrator;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import io.holunda.camunda.example.caseinstancemigration.migration.domain.CamundaTask;
 import io.holunda.camunda.example.caseinstancemigration.migration.domain.CamundaTaskRepository;
-import org.camunda.bpm.engine.ProcessEngine;
+import io.holunda.camunda.example.caseinstancemigration.migration.history.MigrationHistoryEventEmitter;
+import org.camunda.bpm.engine.ManagementService;
 import org.camunda.bpm.engine.TaskService;
-import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
-import org.camunda.bpm.engine.impl.history.HistoryLevel;
-import org.camunda.bpm.engine.impl.history.event.HistoryEvent;
-import org.camunda.bpm.engine.impl.history.event.HistoryEventTypes;
-import org.camunda.bpm.engine.impl.history.handler.HistoryEventHandler;
-import org.camunda.bpm.engine.impl.history.producer.DefaultHistoryEventProducer;
 import org.camunda.bpm.engine.impl.persistence.entity.TaskEntity;
+import org.camunda.bpm.engine.task.NativeTaskQuery;
+import org.camunda.bpm.engine.task.Task;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
@@ -19,7 +18,13 @@ import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
 
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 @Component
 public class TaskMigrator {
@@ -28,69 +33,147 @@ public class TaskMigrator {
 
     private final TaskService taskService;
 
-    private final ProcessEngine processEngine;
+    private final ManagementService managementService;
+
+    private final MigrationHistoryEventEmitter historyEventEmitter;
+
+    private final MigrationMetrics metrics;
+
+    private final MigrationEntityWriter entityWriter;
+
+    private final CaseDefinitionMigrationPlanCache planCache;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(TaskMigrator.class);
 
     public TaskMigrator(CamundaTaskRepository camundaTaskRepository,
                         TaskService taskService,
-                        ProcessEngine processEngine) {
+                        ManagementService managementService,
+                        MigrationHistoryEventEmitter historyEventEmitter,
+                        MigrationMetrics metrics,
+                        MigrationEntityWriter entityWriter,
+                        CaseDefinitionMigrationPlanCache planCache) {
         this.taskService = taskService;
+        this.managementService = managementService;
         this.camundaTaskRepository = camundaTaskRepository;
-        this.processEngine = processEngine;
+        this.historyEventEmitter = historyEventEmitter;
+        this.metrics = metrics;
+        this.entityWriter = entityWriter;
+        this.planCache = planCache;
     }
 
+    /**
+     * Migrates the tasks of a chunk of case instances still referencing another case definition. The engine's task
+     * entities (the source of the history events) are loaded once for the whole chunk before anything is written; the
+     * stale tasks are then streamed and migrated one by one, without holding all of them in a list. Tasks migrated by
+     * an earlier run are skipped and get no history event.
+     *
+     * @return number of tasks migrated.
+     */
     @Transactional(propagation = Propagation.MANDATORY)
-    public void migrateAllTasksForCaseInstance(final String caseInstanceId, final String targetCaseDefId) {
-        Assert.notNull(caseInstanceId, "caseInstanceId is missing");
+    public int migrateAllTasksForCaseInstances(final Collection<String> caseInstanceIds, final String targetCaseDefId) {
+        Assert.notNull(caseInstanceIds, "caseInstanceIds is missing");
         Assert.notNull(targetCaseDefId, "targetCaseDefId is missing");
 
-        final List<CamundaTask> tasksToMigrate = ImmutableList.copyOf(camundaTaskRepository.findByCaseInstanceId(caseInstanceId));
+        final Map<String, TaskEntity> taskSnapshots = metrics.time(MigrationMetrics.Phase.LOOKUP, () -> loadTaskSnapshots(caseInstanceIds));
+
+        if (taskSnapshots.isEmpty()) {
+            return 0;
+        }
+
+        int taskCount = 0;
+        try (Stream<CamundaTask> tasks = camundaTaskRepository.streamByCaseInstanceIdInAndCaseDefinitionIdNot(caseInstanceIds, targetCaseDefId)) {
+            for (Iterator<CamundaTask> iterator = tasks.iterator(); iterator.hasNext(); taskCount++) {
+                migrateOneTask(iterator.next(), targetCaseDefId, taskSnapshots);
+            }
+        }
 
-        if (LOGGER.isInfoEnabled())
-            LOGGER.info(String.format("Found %d tasks to migrate for case instance '%s'", tasksToMigrate.size(), caseInstanceId));
+        LOGGER.debug("Found {} tasks to migrate for {} case instances", taskCount, caseInstanceIds.size());
 
-        tasksToMigrate.forEach(t -> migrateOneTask(t, targetCaseDefId));
+        if (taskCount == 0) {
+            return 0;
+        }
+
+        metrics.time(MigrationMetrics.Phase.TASK_UPDATE, entityWriter::flushAndClear);
+
+        metrics.tasksMigrated(taskCount);
+
+        return taskCount;
     }
 
-    private void migrateOneTask(CamundaTask task, final String targetCaseDefId) {
-        Assert.notNull(task, "task is missing");
+    /**
+     * @return number of tasks migrated.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public int migrateAllTasksForCaseInstancesInBulk(final Collection<String> caseInstanceIds, final String sourceCaseDefId, final String targetCaseDefId) {
+        Assert.notNull(caseInstanceIds, "caseInstanceIds is missing");
+        Assert.notNull(sourceCaseDefId, "sourceCaseDefId is missing");
         Assert.notNull(targetCaseDefId, "targetCaseDefId is missing");
 
-        if (LOGGER.isInfoEnabled())
-            LOGGER.info(String.format("Migrating task '%s'", task.getId()));
+        final Map<String, TaskEntity> taskSnapshots = metrics.time(MigrationMetrics.Phase.LOOKUP, () -> loadTaskSnapshots(caseInstanceIds));
 
-        task.setCaseDefinitionId(targetCaseDefId);
+        final CaseDefinitionMigrationPlan plan = planCache.get(sourceCaseDefId, targetCaseDefId);
 
-        camundaTaskRepository.save(task);
+        final int taskCount = metrics.time(MigrationMetrics.Phase.TASK_UPDATE, () -> plan.getActivityIdMapping().isEmpty()
+                ? camundaTaskRepository.updateCaseDefinitionId(sourceCaseDefId, targetCaseDefId, caseInstanceIds)
+                : entityWriter.updateCaseDefinitionIdAndActivityIds("CamundaTask", "taskDefinitionKey", sourceCaseDefId, targetCaseDefId, plan.getActivityIdMapping(), caseInstanceIds));
 
-        produceTaskHistoryEvent(task.getId());
+        metrics.tasksMigrated(taskCount);
+
+        LOGGER.debug("Migrated {} tasks of {} case instances in bulk", taskCount, caseInstanceIds.size());
+
+        metrics.time(MigrationMetrics.Phase.HISTORY, () -> taskSnapshots.values().stream()
+                .filter(task -> sourceCaseDefId.equals(task.getCaseDefinitionId()))
+                .forEach(task -> {
+                    task.setTaskDefinitionKeyWithoutCascade(plan.mapActivityId(task.getTaskDefinitionKey()));
+                    historyEventEmitter.emitTaskMigrate(task);
+                }));
+
+        return taskCount;
     }
 
-    private void produceTaskHistoryEvent(final String taskId) {
-        Assert.notNull(taskId, "taskId is missing");
+    private void migrateOneTask(CamundaTask task, final String targetCaseDefId, final Map<String, TaskEntity> taskSnapshots) {
+        Assert.notNull(task, "task is missing");
+        Assert.notNull(targetCaseDefId, "targetCaseDefId is missing");
 
-        if (LOGGER.isInfoEnabled())
-            LOGGER.info(String.format("Creating history event for task '%s'", taskId));
+        LOGGER.debug("Migrating task '{}'", task.getId());
 
-        final TaskEntity task = (TaskEntity) taskService.createTaskQuery().taskId(taskId).singleResult();
+        final TaskEntity taskSnapshot = taskSnapshots.get(task.getId());
 
-        if (task == null) {
-            throw new IllegalStateException(String.format("Task '%s' not found", taskId));
+        if (taskSnapshot == null) {
+            throw new IllegalStateException(String.format("Task '%s' not found", task.getId()));
         }
 
-        if (getHistoryLevel().isHistoryEventProduced(HistoryEventTypes.CASE_INSTANCE_UPDATE, null)) {
-            final HistoryEvent event = new DefaultHistoryEventProducer().createTaskInstanceMigrateEvt(task);
-            getHistoryEventHandler().handleEvent(event);
-        }
-    }
+        final CaseDefinitionMigrationPlan plan = planCache.get(task.getCaseDefinitionId(), targetCaseDefId);
 
+        task.setCaseDefinitionId(targetCaseDefId);
+        task.setTaskDefinitionKey(plan.mapActivityId(task.getTaskDefinitionKey()));
+        taskSnapshot.setTaskDefinitionKeyWithoutCascade(task.getTaskDefinitionKey());
 
-    private HistoryEventHandler getHistoryEventHandler() {
-        return ((ProcessEngineConfigurationImpl) processEngine.getProcessEngineConfiguration()).getHistoryEventHandler();
+        metrics.time(MigrationMetrics.Phase.HISTORY, () -> historyEventEmitter.emitTaskMigrate(taskSnapshot));
     }
 
-    private HistoryLevel getHistoryLevel() {
-        return ((ProcessEngineConfigurationImpl) processEngine.getProcessEngineConfiguration()).getHistoryLevel();
+    /**
+     * Loads the engine's task entities of all given case instances with one native query. The entities are only read,
+     * the task migrate event does not carry the case definition id, so the snapshot taken before the update is
+     * sufficient. A renamed task definition key is set on the snapshot, it is not part of the entity's persistent state
+     * and so never written back by the engine.
+     */
+    private Map<String, TaskEntity> loadTaskSnapshots(final Collection<String> caseInstanceIds) {
+        if (caseInstanceIds.isEmpty()) {
+            return ImmutableMap.of();
+        }
+
+        final List<String> ids = ImmutableList.copyOf(caseInstanceIds);
+
+        final String parameters = IntStream.range(0, ids.size())
+                .mapToObj(i -> "#{caseInstanceId" + i + "}")
+                .collect(Collectors.joining(", "));
+
+        final NativeTaskQuery query = taskService.createNativeTaskQuery()
+                .sql("SELECT * FROM " + managementService.getTableName(Task.class) + " WHERE CASE_INST_ID_ IN (" + parameters + ")");
+
+        IntStream.range(0, ids.size()).forEach(i -> query.parameter("caseInstanceId" + i, ids.get(i)));
+
+        return Maps.uniqueIndex(query.list().stream().map(TaskEntity.class::cast).iterator(), TaskEntity::getId);
     }
 }
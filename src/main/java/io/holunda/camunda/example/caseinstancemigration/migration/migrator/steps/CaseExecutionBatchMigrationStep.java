@@ -0,0 +1,30 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.migrator.steps;
+
+/**
+ * Migrates all executions of a chunk of case instances at once, so a step can prefetch whatever it needs (variables,
+ * reference data) for the whole chunk in a single query instead of one per execution.
+ */
+public interface CaseExecutionBatchMigrationStep {
+
+    /**
+     * Migrates the executions of the chunk. Executions are changed in place or replaced within
+     * {@link CaseExecutionMigrationChunk#getExecutions()}; the resulting executions are saved afterwards.
+     */
+    void migrate(final CaseExecutionMigrationChunk chunk);
+
+    /**
+     * Whether this step leaves the executions untouched when migrating from the source to the target case definition,
+     * so chunks of that definition pair skip it. Asked once per definition pair, the answer is cached.
+     */
+    default boolean isNoOpFor(final String sourceCaseDefinitionId, final String targetCaseDefinitionId) {
+        return false;
+    }
+
+    /**
+     * Whether this step has to see every single execution. As long as one step does, the bulk UPDATE mode
+     * falls back to loading and saving the executions one by one.
+     */
+    default boolean requiresExecution() {
+        return true;
+    }
+}
@@ -0,0 +1,67 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.migrator.steps;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import io.holunda.camunda.example.caseinstancemigration.migration.domain.CamundaCaseExecution;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The executions of a chunk of case instances migrated from one source to the target case definition within one
+ * transaction, together with the case instances they belong to.
+ */
+public class CaseExecutionMigrationChunk {
+
+    private final String sourceCaseDefinitionId;
+
+    private final String targetCaseDefinitionId;
+
+    private final ImmutableMap<String, CamundaCaseExecution> caseInstancesById;
+
+    private final List<CamundaCaseExecution> executions;
+
+    public CaseExecutionMigrationChunk(final String sourceCaseDefinitionId,
+                                       final String targetCaseDefinitionId,
+                                       final List<CamundaCaseExecution> caseInstances,
+                                       final List<CamundaCaseExecution> executions) {
+        Assert.notNull(sourceCaseDefinitionId, "sourceCaseDefinitionId is missing");
+        Assert.notNull(targetCaseDefinitionId, "targetCaseDefinitionId is missing");
+        Assert.notNull(caseInstances, "caseInstances is missing");
+        Assert.notNull(executions, "executions is missing");
+        this.sourceCaseDefinitionId = sourceCaseDefinitionId;
+        this.targetCaseDefinitionId = targetCaseDefinitionId;
+        this.caseInstancesById = Maps.uniqueIndex(caseInstances, CamundaCaseExecution::getCaseInstanceId);
+        this.executions = new ArrayList<>(executions);
+    }
+
+    public String getSourceCaseDefinitionId() {
+        return sourceCaseDefinitionId;
+    }
+
+    public String getTargetCaseDefinitionId() {
+        return targetCaseDefinitionId;
+    }
+
+    public List<String> getCaseInstanceIds() {
+        return caseInstancesById.keySet().asList();
+    }
+
+    /**
+     * @return the case instance (its root execution) with the given id, {@code null} if not part of this chunk or
+     * already migrated.
+     */
+    public CamundaCaseExecution getCaseInstance(final String caseInstanceId) {
+        return caseInstancesById.get(caseInstanceId);
+    }
+
+    /**
+     * @return all executions of the chunk, including the case instances, already pointing to the target case
+     * definition. Steps may replace elements of this list.
+     */
+    public List<CamundaCaseExecution> getExecutions() {
+        return executions;
+    }
+}
@@ -2,7 +2,15 @@ package io.holunda.camunda.example.caseinstancemigration.migration.migrator.step
 
 import io.holunda.camunda.example.caseinstancemigration.migration.domain.CamundaCaseExecution;
 
-public interface CaseExecutionMigrationStep {
+/**
+ * Step migrating one execution at a time, applied to every execution of a chunk.
+ */
+public interface CaseExecutionMigrationStep extends CaseExecutionBatchMigrationStep {
 
     CamundaCaseExecution migrate(final CamundaCaseExecution camundaCaseExecution);
+
+    @Override
+    default void migrate(final CaseExecutionMigrationChunk chunk) {
+        chunk.getExecutions().replaceAll(this::migrate);
+    }
 }
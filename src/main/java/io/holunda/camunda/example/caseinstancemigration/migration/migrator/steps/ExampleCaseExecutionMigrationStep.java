@@ -11,4 +11,16 @@ public class ExampleCaseExecutionMigrationStep implements CaseExecutionMigration
     // perform some migration here...
     return camundaCaseExecution;
   }
+
+  @Override
+  public boolean isNoOpFor(String sourceCaseDefinitionId, String targetCaseDefinitionId) {
+    // return false for the definition pairs migrate(..) actually changes executions of
+    return true;
+  }
+
+  @Override
+  public boolean requiresExecution() {
+    // return true as soon as migrate(..) actually changes the execution
+    return false;
+  }
 }
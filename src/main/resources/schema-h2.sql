@@ -0,0 +1,32 @@
+create table if not exists MIGRATION_PROGRESS (
+    ID_ varchar(64) not null,
+    REV_ integer not null,
+    RUN_ID_ varchar(64) not null,
+    SOURCE_CASE_DEF_ID_ varchar(64) not null,
+    TARGET_CASE_DEF_ID_ varchar(64) not null,
+    STATE_ varchar(16) not null,
+    LAST_CASE_INST_ID_ varchar(64),
+    MIGRATED_ bigint not null,
+    FAILED_ bigint not null,
+    START_TIME_ timestamp not null,
+    UPDATE_TIME_ timestamp not null,
+    primary key (ID_)
+);
+
+create table if not exists MIGRATION_PARTITION_LEASE (
+    ID_ varchar(64) not null,
+    REV_ integer not null,
+    TARGET_CASE_DEF_ID_ varchar(64) not null,
+    PARTITION_ integer not null,
+    PARTITIONS_ integer not null,
+    AFTER_CASE_INST_ID_ varchar(64),
+    UP_TO_CASE_INST_ID_ varchar(64),
+    STATE_ varchar(16) not null,
+    OWNER_ varchar(255),
+    EXPIRATION_TIME_ timestamp,
+    MIGRATED_ bigint not null,
+    FAILED_ bigint not null,
+    UPDATE_TIME_ timestamp not null,
+    primary key (ID_),
+    constraint MIGRATION_PARTITION_LEASE_UQ unique (TARGET_CASE_DEF_ID_, PARTITION_)
+);
@@ -0,0 +1,261 @@
+package io.holunda.camunda.example.caseinstancemigration.migration;
+
+import com.google.common.collect.ImmutableList;
+import io.holunda.camunda.example.caseinstancemigration.Application;
+import io.holunda.camunda.example.caseinstancemigration.migration.migrator.steps.RecordingBatchMigrationStep;
+import org.camunda.bpm.engine.CaseService;
+import org.camunda.bpm.engine.HistoryService;
+import org.camunda.bpm.engine.ProcessEngine;
+import org.camunda.bpm.engine.RepositoryService;
+import org.camunda.bpm.engine.TaskService;
+import org.camunda.bpm.engine.history.HistoricCaseInstance;
+import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.camunda.bpm.engine.impl.interceptor.Command;
+import org.camunda.bpm.engine.repository.CaseDefinition;
+import org.camunda.bpm.engine.repository.Deployment;
+import org.camunda.bpm.engine.runtime.CaseExecution;
+import org.camunda.bpm.engine.task.Task;
+import org.camunda.bpm.model.cmmn.Cmmn;
+import org.camunda.bpm.model.cmmn.CmmnModelInstance;
+import org.camunda.bpm.model.cmmn.instance.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Shares one application context between the migration tests. The {@link MigrationProperties} are restored after every
+ * test, so a test may change any of them without cleaning up.
+ */
+@SpringBootTest(classes = {Application.class, RecordingBatchMigrationStep.class})
+@RunWith(SpringJUnit4ClassRunner.class)
+@ActiveProfiles("test")
+public abstract class AbstractCaseMigrationTest {
+
+    @Autowired
+    protected CaseService caseService;
+
+    @Autowired
+    protected TaskService taskService;
+
+    @Autowired
+    protected RepositoryService repositoryService;
+
+    @Autowired
+    protected HistoryService historyService;
+
+    @Autowired
+    protected ProcessEngine processEngine;
+
+    @Autowired
+    protected ApplicationContext ctx;
+
+    @Autowired
+    protected MigrationProperties migrationProperties;
+
+    protected static final String HUMAN_TASK_KEY = "my_case_mock_human_task";
+    protected static final String HUMAN_TASK_2_KEY = "my_case_mock_human_task_2";
+    protected static final String RENAMED_HUMAN_TASK_KEY = "my_case_mock_renamed_human_task";
+
+    private static final AtomicInteger CASE_KEYS = new AtomicInteger();
+
+    /**
+     * The key of the case deployed by the current test, so that no test migrates or counts the case instances of another.
+     */
+    protected String caseKey;
+
+    private MigrationProperties initialProperties;
+
+    @Before
+    public void generateCaseKey() {
+        caseKey = "my_case_mock_" + CASE_KEYS.incrementAndGet();
+    }
+
+    @Before
+    public void snapshotProperties() {
+        initialProperties = new MigrationProperties();
+        copyProperties(migrationProperties, initialProperties);
+    }
+
+    @After
+    public void restoreProperties() {
+        copyProperties(initialProperties, migrationProperties);
+        RecordingBatchMigrationStep.reset();
+    }
+
+    /**
+     * Deploys a version of the case, creates case instances of it and deploys the next version with the same activity.
+     */
+    protected StaleCaseInstances givenStaleCaseInstances(final int caseInstances) {
+        return givenStaleCaseInstances(caseInstances, HUMAN_TASK_KEY);
+    }
+
+    /**
+     * Deploys a version of the case, creates case instances of it and deploys the next version with the given activities.
+     */
+    protected StaleCaseInstances givenStaleCaseInstances(final int caseInstances, final String... newHumanTaskKeys) {
+        return givenStaleCaseInstances(caseKey, caseInstances, newHumanTaskKeys);
+    }
+
+    /**
+     * Deploys a version of the case with the given key, creates case instances of it and deploys the next version with
+     * the given activities.
+     */
+    protected StaleCaseInstances givenStaleCaseInstances(final String caseKey, final int caseInstances, final String... newHumanTaskKeys) {
+        final CaseDefinition oldCaseDefinition = deployCase(caseKey, HUMAN_TASK_KEY);
+
+        final List<String> caseInstanceIds = Stream.generate(() -> caseService.createCaseInstanceByKey(caseKey).getCaseInstanceId())
+                .limit(caseInstances)
+                .collect(Collectors.toList());
+
+        return new StaleCaseInstances(oldCaseDefinition, deployCase(caseKey, newHumanTaskKeys), caseInstanceIds);
+    }
+
+    protected <T> T execute(final Command<T> command) {
+        return ((ProcessEngineConfigurationImpl) processEngine.getProcessEngineConfiguration()).getCommandExecutorTxRequired().execute(command);
+    }
+
+    protected void assertThatExecutionsAreMigrated(String caseInstanceId) {
+        List<CaseExecution> caseExecutions = caseService.createCaseExecutionQuery().caseInstanceId(caseInstanceId).list();
+
+        // Now all case executions should have the NEW definition
+        assertThat(caseExecutions.stream().allMatch(e -> e.getCaseDefinitionId().equals(getLatestCaseDefinitionId()))).isTrue();
+    }
+
+    protected void assertThatTasksAreMigrated(String caseInstanceId) {
+        Task task = taskService.createTaskQuery().caseInstanceId(caseInstanceId).taskDefinitionKey(HUMAN_TASK_KEY).singleResult();
+
+        // Now the task should have the NEW definition
+        assertThat(task.getCaseDefinitionId()).isEqualTo(getLatestCaseDefinitionId());
+    }
+
+    protected void assertThatHistoryIsMigrated(String caseInstanceId) {
+        HistoricCaseInstance historicCaseInstance = historyService.createHistoricCaseInstanceQuery().caseInstanceId(caseInstanceId).singleResult();
+
+        // Now the historic case instance should have the NEW definition
+        assertThat(historicCaseInstance.getCaseDefinitionId()).isEqualTo(getLatestCaseDefinitionId());
+    }
+
+    protected String getLatestCaseDefinitionId() {
+        return repositoryService.createCaseDefinitionQuery().caseDefinitionKey(caseKey).latestVersion().singleResult().getId();
+    }
+
+    protected void deployCaseMock() {
+        deployCaseMock(HUMAN_TASK_KEY);
+    }
+
+    protected void deployCaseMockWithAdditionalActivity() {
+        deployCaseMock(HUMAN_TASK_KEY, HUMAN_TASK_2_KEY);
+    }
+
+    /**
+     * Deploys a version of the case with one human task per given key.
+     */
+    protected CaseDefinition deployCaseMock(String... humanTaskKeys) {
+        return deployCase(caseKey, humanTaskKeys);
+    }
+
+    private CaseDefinition deployCase(String caseKey, String... humanTaskKeys) {
+        CmmnModelInstance caseMock = Cmmn.createEmptyModel();
+
+        Definitions definitions = caseMock.newInstance(Definitions.class);
+        definitions.setTargetNamespace("http://camunda.org/examples");
+        caseMock.setDefinitions(definitions);
+
+        Case caseElement = caseMock.newInstance(Case.class);
+        caseElement.setId(caseKey);
+        definitions.addChildElement(caseElement);
+
+        CasePlanModel casePlanModel = caseMock.newInstance(CasePlanModel.class);
+        casePlanModel.setId(caseKey + "_case");
+        caseElement.addChildElement(casePlanModel);
+
+        for (String humanTaskKey : humanTaskKeys) {
+            HumanTask humanTask = caseMock.newInstance(HumanTask.class);
+            humanTask.setId(humanTaskKey + "_task");
+            casePlanModel.addChildElement(humanTask);
+
+            PlanItem planItem = caseMock.newInstance(PlanItem.class);
+            planItem.setId(humanTaskKey);
+            casePlanModel.addChildElement(planItem);
+
+            planItem.setDefinition(humanTask);
+        }
+
+        Cmmn.validateModel(caseMock);
+        Deployment deployment = repositoryService.createDeployment().addModelInstance("mock/" + caseKey + ".cmmn", caseMock).deploy();
+        return repositoryService.createCaseDefinitionQuery().deploymentId(deployment.getId()).singleResult();
+    }
+
+    /**
+     * Copies the values of all properties in place, as the components keep references to the nested settings.
+     */
+    @SuppressWarnings("unchecked")
+    private static void copyProperties(final Object source, final Object target) {
+        ReflectionUtils.doWithFields(source.getClass(), field -> {
+            ReflectionUtils.makeAccessible(field);
+            final Object value = field.get(source);
+            if (field.getType().getEnclosingClass() == MigrationProperties.class && !field.getType().isEnum()) {
+                copyProperties(value, field.get(target));
+            } else if (value instanceof Map) {
+                final Map<Object, Object> map = new HashMap<>();
+                ((Map<Object, Object>) value).forEach((k, v) -> map.put(k, v instanceof Map ? new HashMap<>((Map<Object, Object>) v) : v));
+                field.set(target, map);
+            } else if (value instanceof List) {
+                field.set(target, new ArrayList<>((List<Object>) value));
+            } else {
+                field.set(target, value);
+            }
+        }, field -> !Modifier.isStatic(field.getModifiers()));
+    }
+
+    /**
+     * Case instances of an old case definition, which is followed by a new one.
+     */
+    protected static final class StaleCaseInstances {
+
+        private final CaseDefinition oldCaseDefinition;
+
+        private final CaseDefinition newCaseDefinition;
+
+        private final List<String> caseInstanceIds;
+
+        private StaleCaseInstances(CaseDefinition oldCaseDefinition, CaseDefinition newCaseDefinition, List<String> caseInstanceIds) {
+            this.oldCaseDefinition = oldCaseDefinition;
+            this.newCaseDefinition = newCaseDefinition;
+            this.caseInstanceIds = ImmutableList.copyOf(caseInstanceIds);
+        }
+
+        public CaseDefinition getOldCaseDefinition() {
+            return oldCaseDefinition;
+        }
+
+        public CaseDefinition getNewCaseDefinition() {
+            return newCaseDefinition;
+        }
+
+        public List<String> getCaseInstanceIds() {
+            return caseInstanceIds;
+        }
+
+        public String getCaseInstanceId() {
+            return caseInstanceIds.get(0);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.history;
+
+import io.holunda.camunda.example.caseinstancemigration.migration.AbstractCaseMigrationTest;
+import io.holunda.camunda.example.caseinstancemigration.migration.domain.CamundaCaseExecutionRepository;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MigrationHistoryEventEmitterTest extends AbstractCaseMigrationTest {
+
+    @Autowired
+    private MigrationHistoryEventEmitter historyEventEmitter;
+
+    @Autowired
+    private CamundaCaseExecutionRepository camundaCaseExecutionRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void shouldWriteBufferedHistoryEventsBeforeCommitAndDiscardThemOnRollback() {
+        StaleCaseInstances staleCaseInstances = givenStaleCaseInstances(2);
+        String oldCaseDefinitionId = staleCaseInstances.getOldCaseDefinition().getId();
+        String newCaseDefinitionId = staleCaseInstances.getNewCaseDefinition().getId();
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        // A rolled back transaction writes none of its buffered events
+        transactionTemplate.execute(status -> {
+            staleCaseInstances.getCaseInstanceIds().forEach(caseInstanceId -> historyEventEmitter.emitCaseInstanceUpdate(camundaCaseExecutionRepository.findOne(caseInstanceId), newCaseDefinitionId));
+            status.setRollbackOnly();
+            return null;
+        });
+
+        staleCaseInstances.getCaseInstanceIds().forEach(caseInstanceId -> assertThat(getHistoricCaseDefinitionId(caseInstanceId)).isEqualTo(oldCaseDefinitionId));
+
+        // A committing transaction writes all of its buffered events right before the commit, not when they are emitted
+        transactionTemplate.execute(status -> {
+            staleCaseInstances.getCaseInstanceIds().forEach(caseInstanceId -> historyEventEmitter.emitCaseInstanceUpdate(camundaCaseExecutionRepository.findOne(caseInstanceId), newCaseDefinitionId));
+            staleCaseInstances.getCaseInstanceIds().forEach(caseInstanceId -> assertThat(getHistoricCaseDefinitionId(caseInstanceId)).isEqualTo(oldCaseDefinitionId));
+            return null;
+        });
+
+        staleCaseInstances.getCaseInstanceIds().forEach(caseInstanceId -> assertThat(getHistoricCaseDefinitionId(caseInstanceId)).isEqualTo(newCaseDefinitionId));
+    }
+
+    private String getHistoricCaseDefinitionId(String caseInstanceId) {
+        // Reads with the connection of the running transaction, if any
+        return jdbcTemplate.queryForObject("select CASE_DEF_ID_ from ACT_HI_CASEINST where ID_ = ?", String.class, caseInstanceId);
+    }
+}
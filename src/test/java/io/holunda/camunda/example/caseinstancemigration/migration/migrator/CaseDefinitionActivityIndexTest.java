@@ -0,0 +1,30 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.migrator;
+
+import com.google.common.collect.ImmutableSet;
+import io.holunda.camunda.example.caseinstancemigration.migration.AbstractCaseMigrationTest;
+import org.camunda.bpm.engine.impl.cmmn.entity.repository.CaseDefinitionEntity;
+import org.camunda.bpm.engine.impl.cmmn.model.CmmnActivity;
+import org.camunda.bpm.engine.repository.CaseDefinition;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CaseDefinitionActivityIndexTest extends AbstractCaseMigrationTest {
+
+    @Test
+    public void shouldIndexActivitiesOfCaseDefinition() {
+        CaseDefinition caseDefinition = deployCaseMock(HUMAN_TASK_KEY, HUMAN_TASK_2_KEY);
+
+        CaseDefinitionActivityIndex activityIndex = CaseDefinitionActivityIndex.of((CaseDefinitionEntity) repositoryService.getCaseDefinition(caseDefinition.getId()));
+
+        assertThat(activityIndex.getCaseDefinitionId()).isEqualTo(caseDefinition.getId());
+        assertThat(activityIndex.getActivityIds()).containsExactly(HUMAN_TASK_KEY, HUMAN_TASK_2_KEY);
+
+        // Missing activities are those of the case plan model without an execution, in model order
+        assertThat(activityIndex.getMissingActivities(ImmutableSet.of())).extracting(CmmnActivity::getId)
+                .containsExactly(HUMAN_TASK_KEY, HUMAN_TASK_2_KEY);
+        assertThat(activityIndex.getMissingActivities(ImmutableSet.of(HUMAN_TASK_KEY, "unknown_activity"))).extracting(CmmnActivity::getId)
+                .containsExactly(HUMAN_TASK_2_KEY);
+        assertThat(activityIndex.getMissingActivities(ImmutableSet.of(HUMAN_TASK_KEY, HUMAN_TASK_2_KEY))).isEmpty();
+    }
+}
@@ -0,0 +1,71 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.migrator;
+
+import com.google.common.collect.ImmutableList;
+import io.holunda.camunda.example.caseinstancemigration.migration.AbstractCaseMigrationTest;
+import io.holunda.camunda.example.caseinstancemigration.migration.MigrationProperties;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class CaseInstanceMigrationExecutorTest extends AbstractCaseMigrationTest {
+
+    @Autowired
+    private CaseInstanceMigrator migrator;
+
+    @Autowired
+    private MigrationThrottle throttle;
+
+    @Test
+    public void shouldRejectPartitionsBlockedOnFullQueueOrSubmittedAfterShutdown() throws Exception {
+        // A pool of its own, as the shared one must not be shut down
+        migrationProperties.getParallel().setPoolSize(1);
+        migrationProperties.getParallel().setQueueCapacity(1);
+        migrationProperties.getParallel().setBackpressure(MigrationProperties.Backpressure.BLOCK);
+        CaseInstanceMigrationExecutor executor = new CaseInstanceMigrationExecutor(migrator, migrationProperties, throttle);
+
+        CountDownLatch release = new CountDownLatch(1);
+        Consumer<List<String>> blockingOperation = chunk -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        ExecutorService producer = Executors.newSingleThreadExecutor();
+        try {
+            // The worker is busy and the queue is full, so the third partition blocks its producer
+            executor.submitPartition(ImmutableList.of("first"), blockingOperation);
+            executor.submitPartition(ImmutableList.of("second"), blockingOperation);
+            Future<?> blocked = producer.submit(() -> executor.submitPartition(ImmutableList.of("third"), blockingOperation));
+            TimeUnit.MILLISECONDS.sleep(300);
+            assertThat(blocked.isDone()).isFalse();
+
+            // Shutting the pool down releases the producer instead of leaving it blocked forever
+            executor.shutdown();
+            Throwable failure = catchThrowable(() -> blocked.get(5, TimeUnit.SECONDS));
+            assertThat(failure).isInstanceOf(ExecutionException.class);
+            assertThat(failure.getCause()).isInstanceOf(RejectedExecutionException.class);
+
+            // No new pool is started after the shutdown
+            assertThat(catchThrowable(() -> executor.submitPartition(ImmutableList.of("fourth"), blockingOperation)))
+                    .isInstanceOf(RejectedExecutionException.class);
+        } finally {
+            release.countDown();
+            producer.shutdownNow();
+            executor.shutdown();
+        }
+    }
+}
@@ -1,56 +1,88 @@
 package io.holunda.camunda.example.caseinstancemigration.migration.migrator;
 
-import io.holunda.camunda.example.caseinstancemigration.Application;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.holunda.camunda.example.caseinstancemigration.migration.AbstractCaseMigrationTest;
+import io.holunda.camunda.example.caseinstancemigration.migration.application.BackgroundCaseMigration;
+import io.holunda.camunda.example.caseinstancemigration.migration.application.CaseMigrationHealthIndicator;
+import io.holunda.camunda.example.caseinstancemigration.migration.application.CaseMigrationOrchestrator;
 import io.holunda.camunda.example.caseinstancemigration.migration.command.MigrateCaseInstanceVersionCmd;
 import io.holunda.camunda.example.caseinstancemigration.migration.command.AddNewActivitiesCmd;
-import org.camunda.bpm.engine.CaseService;
-import org.camunda.bpm.engine.ProcessEngine;
-import org.camunda.bpm.engine.RepositoryService;
-import org.camunda.bpm.engine.TaskService;
+import io.holunda.camunda.example.caseinstancemigration.migration.domain.MigrationPartitionLease;
+import io.holunda.camunda.example.caseinstancemigration.migration.domain.MigrationPartitionLeaseRepository;
+import io.holunda.camunda.example.caseinstancemigration.migration.domain.MigrationProgress;
+import io.holunda.camunda.example.caseinstancemigration.migration.domain.MigrationProgressRepository;
+import io.holunda.camunda.example.caseinstancemigration.migration.migrator.steps.CaseExecutionMigrationChunk;
+import io.holunda.camunda.example.caseinstancemigration.migration.migrator.steps.RecordingBatchMigrationStep;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.camunda.bpm.engine.history.HistoricCaseInstance;
 import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
 import org.camunda.bpm.engine.repository.CaseDefinition;
 import org.camunda.bpm.engine.runtime.CaseExecution;
 import org.camunda.bpm.engine.runtime.CaseInstance;
 import org.camunda.bpm.engine.task.Task;
-import org.camunda.bpm.model.cmmn.Cmmn;
-import org.camunda.bpm.model.cmmn.CmmnModelInstance;
-import org.camunda.bpm.model.cmmn.instance.*;
 import org.junit.Test;
-import org.junit.runner.RunWith;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.context.ApplicationContext;
-import org.springframework.test.context.ActiveProfiles;
-import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
 
-@SpringBootTest(classes = Application.class)
-@RunWith(SpringJUnit4ClassRunner.class)
-@ActiveProfiles("test")
-public class CaseInstanceMigratorTest {
+public class CaseInstanceMigratorTest extends AbstractCaseMigrationTest {
 
     @Autowired
-    private CaseService caseService;
+    private CaseInstanceMigrationExecutor migrationExecutor;
 
     @Autowired
-    private TaskService taskService;
+    private MigrationProgressTracker progressTracker;
 
     @Autowired
-    private RepositoryService repositoryService;
+    private MigrationProgressRepository migrationProgressRepository;
 
     @Autowired
-    private ProcessEngine processEngine;
+    private BackgroundCaseMigration backgroundCaseMigration;
 
     @Autowired
-    private ApplicationContext ctx;
+    private CaseMigrationHealthIndicator caseMigrationHealthIndicator;
 
-    private static String CASE_KEY = "my_case_mock";
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private MigrationPlanner migrationPlanner;
 
-    private static String HUMAN_TASK_KEY = "my_case_mock_human_task";
-    private static String HUMAN_TASK_2_KEY = "my_case_mock_human_task_2";
+    @Autowired
+    private CaseMigrationOrchestrator orchestrator;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CaseDefinitionMigrationPlanCache planCache;
+
+    @Autowired
+    private MigrationPartitionLeaseRepository leaseRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
 
     private CaseDefinition oldCaseDefinition;
 
@@ -60,14 +92,14 @@ public class CaseInstanceMigratorTest {
     public void shouldMigrateCaseInstancesWithTasksUsingCommand() {
         deployCaseMock();
 
-        oldCaseDefinition = repositoryService.createCaseDefinitionQuery().caseDefinitionKey(CASE_KEY).latestVersion().singleResult();
+        oldCaseDefinition = repositoryService.createCaseDefinitionQuery().caseDefinitionKey(caseKey).latestVersion().singleResult();
 
-        CaseInstance caseInstance = caseService.createCaseInstanceByKey(CASE_KEY);
+        CaseInstance caseInstance = caseService.createCaseInstanceByKey(caseKey);
 
         deployCaseMock();
 
         // We should now have a latest definition different from the old one
-        newCaseDefinition = repositoryService.createCaseDefinitionQuery().caseDefinitionKey(CASE_KEY).latestVersion().singleResult();
+        newCaseDefinition = repositoryService.createCaseDefinitionQuery().caseDefinitionKey(caseKey).latestVersion().singleResult();
         assertThat(newCaseDefinition.getId()).isNotEqualTo(oldCaseDefinition.getId());
 
         // Currently all case executions should have the OLD definition
@@ -79,116 +111,554 @@ public class CaseInstanceMigratorTest {
         assertThat(task.getCaseDefinitionId()).isEqualTo(oldCaseDefinition.getId());
 
         // Perform migration
-        ((ProcessEngineConfigurationImpl) processEngine.getProcessEngineConfiguration()).getCommandExecutorTxRequired().execute(new MigrateCaseInstanceVersionCmd(CASE_KEY, ctx));
+        ((ProcessEngineConfigurationImpl) processEngine.getProcessEngineConfiguration()).getCommandExecutorTxRequired().execute(new MigrateCaseInstanceVersionCmd(caseKey, ctx));
 
         assertThatExecutionsAreMigrated(caseInstance.getCaseInstanceId());
         assertThatTasksAreMigrated(caseInstance.getCaseInstanceId());
     }
 
+    @Test
+    public void shouldRecordMigrationMetrics() {
+        StaleCaseInstances staleCaseInstances = givenStaleCaseInstances(2);
+
+        double migratedBefore = meterRegistry.get("migration.case.instances").tag("result", "migrated").counter().count();
+        long historyEventsBefore = meterRegistry.get("migration.phase").tag("phase", "history").timer().count();
+
+        execute(new MigrateCaseInstanceVersionCmd(caseKey, ctx));
+
+        staleCaseInstances.getCaseInstanceIds().forEach(this::assertThatExecutionsAreMigrated);
+
+        // Every migrated case instance is counted, its history event timed, and nothing is left once the run ended
+        assertThat(meterRegistry.get("migration.case.instances").tag("result", "migrated").counter().count())
+                .isGreaterThanOrEqualTo(migratedBefore + staleCaseInstances.getCaseInstanceIds().size());
+        assertThat(meterRegistry.get("migration.phase").tag("phase", "history").timer().count()).isGreaterThan(historyEventsBefore);
+        assertThat(meterRegistry.get("migration.remaining").gauge().value()).isZero();
+    }
+
+    @Test
+    public void shouldMigrateCaseInstancesPageByPage() {
+        StaleCaseInstances staleCaseInstances = givenStaleCaseInstances(3);
+
+        // Perform migration with pages smaller than the number of case instances
+        migrationProperties.setPageSize(2);
+        execute(new MigrateCaseInstanceVersionCmd(caseKey, ctx));
+
+        staleCaseInstances.getCaseInstanceIds().forEach(caseInstanceId -> {
+            assertThatExecutionsAreMigrated(caseInstanceId);
+            assertThatTasksAreMigrated(caseInstanceId);
+        });
+    }
+
+    @Test
+    public void shouldMigrateCaseInstancesInParallel() {
+        StaleCaseInstances staleCaseInstances = givenStaleCaseInstances(4);
+
+        // Perform migration with one partition per case instance on the worker pool
+        migrationProperties.getParallel().setEnabled(true);
+        migrationProperties.setPageSize(1);
+        execute(new MigrateCaseInstanceVersionCmd(caseKey, ctx));
+
+        staleCaseInstances.getCaseInstanceIds().forEach(caseInstanceId -> {
+            assertThatExecutionsAreMigrated(caseInstanceId);
+            assertThatTasksAreMigrated(caseInstanceId);
+        });
+    }
+
+    @Test
+    public void shouldIsolateFailingCaseInstanceWithinChunk() {
+        StaleCaseInstances staleCaseInstances = givenStaleCaseInstances(3);
+        List<String> caseInstanceIds = staleCaseInstances.getCaseInstanceIds();
+
+        // Migrate all case instances in one chunk together with an unknown case instance, which fails the chunk
+        migrationProperties.setCommitInterval(4);
+        int failed = migrationExecutor.migratePartition(Arrays.asList(caseInstanceIds.get(0), "unknown-case-instance", caseInstanceIds.get(1), caseInstanceIds.get(2)),
+                staleCaseInstances.getNewCaseDefinition().getId());
+
+        assertThat(failed).isEqualTo(1);
+        caseInstanceIds.forEach(this::assertThatExecutionsAreMigrated);
+        assertThatTasksAreMigrated(caseInstanceIds.get(2));
+    }
+
+    @Test
+    public void shouldResumeMigrationFromCheckpoint() {
+        StaleCaseInstances staleCaseInstances = givenStaleCaseInstances(2);
+
+        List<String> caseInstanceIds = staleCaseInstances.getCaseInstanceIds().stream().sorted().collect(Collectors.toList());
+
+        // Simulate a run interrupted after the first case instance
+        MigrationProgress interrupted = progressTracker.start("interrupted-run", staleCaseInstances.getOldCaseDefinition().getId(), staleCaseInstances.getNewCaseDefinition().getId());
+        progressTracker.checkpoint(interrupted.getId(), caseInstanceIds.get(0), 0, 0);
+
+        // Perform migration, which resumes after the checkpoint
+        execute(new MigrateCaseInstanceVersionCmd(caseKey, ctx));
+
+        assertThat(caseService.createCaseInstanceQuery().caseInstanceId(caseInstanceIds.get(0)).singleResult().getCaseDefinitionId())
+                .isEqualTo(staleCaseInstances.getOldCaseDefinition().getId());
+        assertThatExecutionsAreMigrated(caseInstanceIds.get(1));
+
+        MigrationProgress resumed = migrationProgressRepository.findOne(interrupted.getId());
+        assertThat(resumed.getState()).isEqualTo(MigrationProgress.State.COMPLETED);
+        assertThat(resumed.getLastCaseInstanceId()).isEqualTo(caseInstanceIds.get(1));
+        assertThat(resumed.getMigrated()).isEqualTo(1);
+
+        // The next run starts over and picks up the rest
+        execute(new MigrateCaseInstanceVersionCmd(caseKey, ctx));
+
+        assertThatExecutionsAreMigrated(caseInstanceIds.get(0));
+    }
+
+    @Test
+    public void shouldMigrateCaseInstancesInBackground() throws Exception {
+        StaleCaseInstances staleCaseInstances = givenStaleCaseInstances(1);
+
+        // Perform migration on the background thread and wait for it
+        migrationProperties.getBackground().setReadinessGate(true);
+        backgroundCaseMigration.start(ImmutableList.of(caseKey)).get(1, TimeUnit.MINUTES);
+
+        assertThat(backgroundCaseMigration.getState()).isEqualTo(BackgroundCaseMigration.State.COMPLETED);
+        assertThat(backgroundCaseMigration.getProgress()).isNotEmpty();
+        assertThat(caseMigrationHealthIndicator.health().getStatus()).isEqualTo(Status.UP);
+
+        assertThatExecutionsAreMigrated(staleCaseInstances.getCaseInstanceId());
+        assertThatTasksAreMigrated(staleCaseInstances.getCaseInstanceId());
+    }
+
+    @Test
+    public void shouldReportFailedBackgroundMigrationOutOfService() throws Exception {
+        migrationProperties.getBackground().setReadinessGate(true);
+        backgroundCaseMigration.start(ImmutableList.of(caseKey + "_unknown")).get(1, TimeUnit.MINUTES);
+
+        assertThat(backgroundCaseMigration.getState()).isEqualTo(BackgroundCaseMigration.State.FAILED);
+
+        // The application is kept out of traffic, but not reported down, which would get it restarted
+        Health health = caseMigrationHealthIndicator.health();
+        assertThat(health.getStatus()).isEqualTo(Status.OUT_OF_SERVICE);
+        assertThat(health.getDetails()).containsEntry("reason", "Background migration failed").containsKey("failure");
+    }
+
+    @Test
+    public void shouldMigrateCaseDefinitionKeysMatchingPatternConcurrently() {
+        List<StaleCaseInstances> staleCaseInstancesOfKeys = Stream.of(caseKey + "_a", caseKey + "_b")
+                .map(key -> givenStaleCaseInstances(key, 2))
+                .collect(Collectors.toList());
+
+        // Select both keys by pattern, with a connection budget that only fits one key at a time
+        migrationProperties.setCaseDefinitionKeyPattern(Pattern.quote(caseKey) + "_[ab]");
+        migrationProperties.getOrchestration().setConcurrency(4);
+        migrationProperties.getOrchestration().setConnectionBudget(3);
+
+        assertThat(orchestrator.resolveConfiguredCaseDefinitions()).hasSize(2)
+                .containsEntry(caseKey + "_a", staleCaseInstancesOfKeys.get(0).getNewCaseDefinition().getId())
+                .containsEntry(caseKey + "_b", staleCaseInstancesOfKeys.get(1).getNewCaseDefinition().getId());
+
+        ch.qos.logback.classic.Logger orchestratorLogger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(CaseMigrationOrchestrator.class);
+        ListAppender<ILoggingEvent> appender = new ListAppender<>();
+        appender.start();
+        orchestratorLogger.addAppender(appender);
+        try {
+            orchestrator.migrate(UUID.randomUUID().toString());
+        } finally {
+            orchestratorLogger.detachAppender(appender);
+        }
+
+        // The concurrency of two keys is reduced to one
+        List<String> messages = appender.list.stream().map(ILoggingEvent::getFormattedMessage).collect(Collectors.toList());
+        assertThat(messages).contains("Reducing concurrency from 2 to 1 to fit the connection budget of 3");
+        assertThat(messages.stream().anyMatch(message -> message.startsWith("Migrating 2 case definition keys with concurrency 1"))).isTrue();
+
+        // The case instances of both keys are migrated
+        staleCaseInstancesOfKeys.forEach(staleCaseInstances -> staleCaseInstances.getCaseInstanceIds().forEach(caseInstanceId -> {
+            assertThat(caseService.createCaseExecutionQuery().caseInstanceId(caseInstanceId).list().stream()
+                    .allMatch(e -> e.getCaseDefinitionId().equals(staleCaseInstances.getNewCaseDefinition().getId()))).isTrue();
+            assertThat(taskService.createTaskQuery().caseInstanceId(caseInstanceId).singleResult().getCaseDefinitionId())
+                    .isEqualTo(staleCaseInstances.getNewCaseDefinition().getId());
+        }));
+    }
+
+    @Test
+    public void shouldMigrateCaseInstancesWithTasksInBulk() {
+        StaleCaseInstances staleCaseInstances = givenStaleCaseInstances(2);
+
+        // Perform migration with set-based updates in chunks smaller than the number of case instances
+        migrationProperties.setBulkUpdate(true);
+        migrationProperties.setBulkChunkSize(1);
+        execute(new MigrateCaseInstanceVersionCmd(caseKey, ctx));
+
+        staleCaseInstances.getCaseInstanceIds().forEach(caseInstanceId -> {
+            assertThatExecutionsAreMigrated(caseInstanceId);
+            assertThatTasksAreMigrated(caseInstanceId);
+            assertThatHistoryIsMigrated(caseInstanceId);
+        });
+    }
+
+    @Test
+    public void shouldMigrateCaseInstancesOfFailingBulkChunkOneByOne() {
+        StaleCaseInstances staleCaseInstances = givenStaleCaseInstances(3);
+        List<String> caseInstanceIds = staleCaseInstances.getCaseInstanceIds().stream().sorted().collect(Collectors.toList());
+        String failingCaseInstanceId = caseInstanceIds.get(0);
+
+        double failedBefore = meterRegistry.get("migration.case.instances").tag("result", "failed").counter().count();
+
+        // The first case instance cannot be moved to the new definition, which fails the first chunk as a whole
+        jdbcTemplate.execute(String.format("ALTER TABLE ACT_RU_CASE_EXECUTION ADD CONSTRAINT FAILING_CASE_INSTANCE CHECK (CASE_INST_ID_ <> '%s' OR CASE_DEF_ID_ <> '%s')",
+                failingCaseInstanceId, staleCaseInstances.getNewCaseDefinition().getId()));
+        migrationProperties.setBulkUpdate(true);
+        migrationProperties.setBulkChunkSize(2);
+        String runId = UUID.randomUUID().toString();
+        try {
+            execute(new MigrateCaseInstanceVersionCmd(caseKey, runId, ctx));
+        } finally {
+            jdbcTemplate.execute("ALTER TABLE ACT_RU_CASE_EXECUTION DROP CONSTRAINT FAILING_CASE_INSTANCE");
+        }
+
+        // Only the failing case instance is left behind, the others of its chunk and the following chunk are migrated
+        assertThat(caseService.createCaseInstanceQuery().caseInstanceId(failingCaseInstanceId).singleResult().getCaseDefinitionId())
+                .isEqualTo(staleCaseInstances.getOldCaseDefinition().getId());
+        caseInstanceIds.subList(1, caseInstanceIds.size()).forEach(caseInstanceId -> {
+            assertThatExecutionsAreMigrated(caseInstanceId);
+            assertThatTasksAreMigrated(caseInstanceId);
+        });
+
+        MigrationProgress progress = migrationProgressRepository.findByRunId(runId).get(0);
+        assertThat(progress.getState()).isEqualTo(MigrationProgress.State.COMPLETED);
+        assertThat(progress.getMigrated()).isEqualTo(2);
+        assertThat(progress.getFailed()).isEqualTo(1);
+        assertThat(meterRegistry.get("migration.case.instances").tag("result", "failed").counter().count()).isEqualTo(failedBefore + 1);
+    }
+
     @Test
     public void shouldAddNewActivitiesDuringMigration() {
         deployCaseMock();
 
-        oldCaseDefinition = repositoryService.createCaseDefinitionQuery().caseDefinitionKey(CASE_KEY).latestVersion().singleResult();
+        oldCaseDefinition = repositoryService.createCaseDefinitionQuery().caseDefinitionKey(caseKey).latestVersion().singleResult();
 
-        CaseInstance caseInstance = caseService.createCaseInstanceByKey(CASE_KEY);
+        CaseInstance caseInstance = caseService.createCaseInstanceByKey(caseKey);
 
         assertThat(caseService.createCaseExecutionQuery().caseInstanceId(caseInstance.getCaseInstanceId()).count()).isEqualTo(2);
 
         deployCaseMockWithAdditionalActivity();
 
         // We should now have a latest definition different from the old one
-        newCaseDefinition = repositoryService.createCaseDefinitionQuery().caseDefinitionKey(CASE_KEY).latestVersion().singleResult();
+        newCaseDefinition = repositoryService.createCaseDefinitionQuery().caseDefinitionKey(caseKey).latestVersion().singleResult();
         assertThat(newCaseDefinition.getId()).isNotEqualTo(oldCaseDefinition.getId());
 
         // Perform migration
-        ((ProcessEngineConfigurationImpl) processEngine.getProcessEngineConfiguration()).getCommandExecutorTxRequired().execute(new MigrateCaseInstanceVersionCmd(CASE_KEY, ctx));
+        ((ProcessEngineConfigurationImpl) processEngine.getProcessEngineConfiguration()).getCommandExecutorTxRequired().execute(new MigrateCaseInstanceVersionCmd(caseKey, ctx));
 
         assertThatExecutionsAreMigrated(caseInstance.getCaseInstanceId());
         assertThatTasksAreMigrated(caseInstance.getCaseInstanceId());
 
-        ((ProcessEngineConfigurationImpl) processEngine.getProcessEngineConfiguration()).getCommandExecutorTxRequired().execute(new AddNewActivitiesCmd(CASE_KEY, ctx));
+        ((ProcessEngineConfigurationImpl) processEngine.getProcessEngineConfiguration()).getCommandExecutorTxRequired().execute(new AddNewActivitiesCmd(caseKey, ctx));
 
         assertThat(caseService.createCaseExecutionQuery().caseInstanceId(caseInstance.getCaseInstanceId()).count()).isEqualTo(3);
     }
 
-    private void assertThatExecutionsAreMigrated(String caseInstanceId) {
-        List<CaseExecution> caseExecutions = caseService.createCaseExecutionQuery().caseInstanceId(caseInstanceId).list();
+    @Test
+    public void shouldAddNewActivitiesInParallelChunksToIncompleteCaseInstancesOnly() {
+        StaleCaseInstances staleCaseInstances = givenStaleCaseInstances(2, HUMAN_TASK_KEY, HUMAN_TASK_2_KEY);
+
+        // A case instance of the new definition already has all activities
+        CaseInstance completeCaseInstance = caseService.createCaseInstanceByKey(caseKey);
+        assertThat(caseService.createCaseExecutionQuery().caseInstanceId(completeCaseInstance.getCaseInstanceId()).count()).isEqualTo(3);
+
+        execute(new MigrateCaseInstanceVersionCmd(caseKey, ctx));
 
-        // Now all case executions should have the NEW definition
-        assertThat(caseExecutions.stream().allMatch(e -> e.getCaseDefinitionId().equals(newCaseDefinition.getId()))).isTrue();
+        // Add new activities page by page in chunks on the worker pool
+        migrationProperties.getParallel().setEnabled(true);
+        migrationProperties.setPageSize(2);
+        migrationProperties.setCommitInterval(2);
+        execute(new AddNewActivitiesCmd(caseKey, ctx));
+
+        staleCaseInstances.getCaseInstanceIds().forEach(caseInstanceId -> assertThat(caseService.createCaseExecutionQuery().caseInstanceId(caseInstanceId).count()).isEqualTo(3));
+        assertThat(caseService.createCaseExecutionQuery().caseInstanceId(completeCaseInstance.getCaseInstanceId()).count()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldPlanMigrationWithoutWriting() {
+        StaleCaseInstances staleCaseInstances = givenStaleCaseInstances(2, HUMAN_TASK_KEY, HUMAN_TASK_2_KEY);
+        String oldCaseDefinitionId = staleCaseInstances.getOldCaseDefinition().getId();
+
+        MigrationPlan plan = migrationPlanner.plan(caseKey);
+
+        assertThat(plan.getTargetCaseDefinitionId()).isEqualTo(staleCaseInstances.getNewCaseDefinition().getId());
+        MigrationPlan.Source source = plan.getSources().stream().filter(s -> s.getCaseDefinitionId().equals(oldCaseDefinitionId)).findFirst().get();
+        assertThat(source.getCaseInstances()).isEqualTo(2);
+        assertThat(source.getExecutions()).isEqualTo(4);
+        assertThat(source.getTasks()).isEqualTo(2);
+        assertThat(plan.getActivitiesToAdd().get(HUMAN_TASK_2_KEY)).isGreaterThanOrEqualTo(2);
+        assertThat(plan.getActivitiesToAdd()).doesNotContainKey(HUMAN_TASK_KEY);
+
+        // Nothing should have been migrated
+        staleCaseInstances.getCaseInstanceIds().forEach(caseInstanceId -> assertThat(caseService.createCaseExecutionQuery().caseInstanceId(caseInstanceId).list().stream()
+                .allMatch(e -> e.getCaseDefinitionId().equals(oldCaseDefinitionId))).isTrue());
+    }
+
+    @Test
+    public void shouldPassWholeChunkToBatchMigrationStep() {
+        StaleCaseInstances staleCaseInstances = givenStaleCaseInstances(3);
+
+        RecordingBatchMigrationStep.sourceCaseDefinitionId = staleCaseInstances.getOldCaseDefinition().getId();
+        migrationProperties.setCommitInterval(3);
+        migrationExecutor.migratePartition(staleCaseInstances.getCaseInstanceIds(), staleCaseInstances.getNewCaseDefinition().getId());
+
+        // The step should have seen all case instances with their executions at once
+        assertThat(RecordingBatchMigrationStep.CHUNKS).hasSize(1);
+        CaseExecutionMigrationChunk chunk = RecordingBatchMigrationStep.CHUNKS.get(0);
+        assertThat(chunk.getSourceCaseDefinitionId()).isEqualTo(staleCaseInstances.getOldCaseDefinition().getId());
+        assertThat(chunk.getCaseInstanceIds()).containsOnlyElementsOf(staleCaseInstances.getCaseInstanceIds()).hasSize(3);
+        assertThat(chunk.getExecutions()).hasSize(6);
+
+        staleCaseInstances.getCaseInstanceIds().forEach(this::assertThatExecutionsAreMigrated);
     }
 
-    private void assertThatTasksAreMigrated(String caseInstanceId) {
-        Task task = taskService.createTaskQuery().caseInstanceId(caseInstanceId).taskDefinitionKey(HUMAN_TASK_KEY).singleResult();
+    @Test
+    public void shouldSkipAlreadyMigratedCaseInstances() {
+        StaleCaseInstances staleCaseInstances = givenStaleCaseInstances(2);
+        List<String> caseInstanceIds = staleCaseInstances.getCaseInstanceIds();
+
+        assertThat(migrationExecutor.migratePartition(caseInstanceIds, staleCaseInstances.getNewCaseDefinition().getId())).isZero();
 
-        // Now the task should have the NEW definition
-        assertThat(task.getCaseDefinitionId()).isEqualTo(newCaseDefinition.getId());
+        double executionsBefore = meterRegistry.get("migration.executions").counter().count();
+        double tasksBefore = meterRegistry.get("migration.tasks").counter().count();
+        long historyEventsBefore = meterRegistry.get("migration.phase").tag("phase", "history").timer().count();
+
+        // Migrating again should neither write executions or tasks nor produce history events
+        assertThat(migrationExecutor.migratePartition(caseInstanceIds, staleCaseInstances.getNewCaseDefinition().getId())).isZero();
+
+        assertThat(meterRegistry.get("migration.executions").counter().count()).isEqualTo(executionsBefore);
+        assertThat(meterRegistry.get("migration.tasks").counter().count()).isEqualTo(tasksBefore);
+        assertThat(meterRegistry.get("migration.phase").tag("phase", "history").timer().count()).isEqualTo(historyEventsBefore);
+
+        caseInstanceIds.forEach(caseInstanceId -> {
+            assertThatExecutionsAreMigrated(caseInstanceId);
+            assertThatTasksAreMigrated(caseInstanceId);
+            assertThatHistoryIsMigrated(caseInstanceId);
+        });
     }
 
-    private void deployCaseMock() {
-        CmmnModelInstance caseMock = Cmmn.createEmptyModel();
+    @Test
+    public void shouldFailChunkIfExecutionWasModifiedConcurrently() {
+        StaleCaseInstances staleCaseInstances = givenStaleCaseInstances(1);
+        String caseInstanceId = staleCaseInstances.getCaseInstanceId();
+
+        // Another transaction updates the case instance after the chunk has loaded it
+        RecordingBatchMigrationStep.sourceCaseDefinitionId = staleCaseInstances.getOldCaseDefinition().getId();
+        RecordingBatchMigrationStep.action = chunk ->
+                jdbcTemplate.update("UPDATE ACT_RU_CASE_EXECUTION SET REV_ = REV_ + 1 WHERE ID_ = ?", caseInstanceId);
+        assertThat(migrationExecutor.migratePartition(ImmutableList.of(caseInstanceId), staleCaseInstances.getNewCaseDefinition().getId())).isEqualTo(1);
+
+        // The batched update should have detected the stale revision and rolled back the chunk
+        assertThat(caseService.createCaseExecutionQuery().caseInstanceId(caseInstanceId).list().stream()
+                .allMatch(e -> e.getCaseDefinitionId().equals(staleCaseInstances.getOldCaseDefinition().getId()))).isTrue();
+    }
 
-        Definitions definitions = caseMock.newInstance(Definitions.class);
-        definitions.setTargetNamespace("http://camunda.org/examples");
-        caseMock.setDefinitions(definitions);
+    @Test
+    public void shouldRetryCaseInstancesWithLockConflicts() {
+        StaleCaseInstances staleCaseInstances = givenStaleCaseInstances(1);
+        String caseInstanceId = staleCaseInstances.getCaseInstanceId();
+
+        double recoveredBefore = meterRegistry.get("migration.case.instances").tag("result", "recovered").counter().count();
+
+        // Only the first attempt conflicts with concurrent engine activity
+        AtomicInteger attempts = new AtomicInteger();
+        RecordingBatchMigrationStep.sourceCaseDefinitionId = staleCaseInstances.getOldCaseDefinition().getId();
+        RecordingBatchMigrationStep.action = chunk -> {
+            if (attempts.getAndIncrement() == 0) {
+                jdbcTemplate.update("UPDATE ACT_RU_CASE_EXECUTION SET REV_ = REV_ + 1 WHERE ID_ = ?", caseInstanceId);
+            }
+        };
+        String runId = UUID.randomUUID().toString();
+        execute(new MigrateCaseInstanceVersionCmd(caseKey, runId, ctx));
+
+        assertThat(attempts.get()).isEqualTo(2);
+        assertThatExecutionsAreMigrated(caseInstanceId);
+        assertThatTasksAreMigrated(caseInstanceId);
+
+        // The retried case instance should count as migrated
+        MigrationProgress progress = migrationProgressRepository.findByRunId(runId).stream()
+                .filter(p -> p.getSourceCaseDefinitionId().equals(staleCaseInstances.getOldCaseDefinition().getId())).findFirst().get();
+        assertThat(progress.getMigrated()).isEqualTo(1);
+        assertThat(progress.getFailed()).isZero();
+        assertThat(meterRegistry.get("migration.case.instances").tag("result", "recovered").counter().count()).isEqualTo(recoveredBefore + 1);
+    }
 
-        Case caseElement = caseMock.newInstance(Case.class);
-        caseElement.setId(CASE_KEY);
-        definitions.addChildElement(caseElement);
+    @Test
+    public void shouldOnlyMigrateSourceDefinitionsHavingCaseInstances() {
+        CaseDefinition emptyCaseDefinition = deployCaseMock(HUMAN_TASK_KEY);
+
+        StaleCaseInstances staleCaseInstances = givenStaleCaseInstances(1);
+        String oldCaseDefinitionId = staleCaseInstances.getOldCaseDefinition().getId();
+        String newCaseDefinitionId = staleCaseInstances.getNewCaseDefinition().getId();
 
-        CasePlanModel casePlanModel = caseMock.newInstance(CasePlanModel.class);
-        casePlanModel.setId(CASE_KEY + "_case");
-        caseElement.addChildElement(casePlanModel);
+        String runId = UUID.randomUUID().toString();
+        execute(new MigrateCaseInstanceVersionCmd(caseKey, runId, ctx));
 
-        HumanTask humanTask = caseMock.newInstance(HumanTask.class);
-        humanTask.setId(HUMAN_TASK_KEY + "_task");
-        casePlanModel.addChildElement(humanTask);
+        assertThatExecutionsAreMigrated(staleCaseInstances.getCaseInstanceId());
 
-        PlanItem planItem = caseMock.newInstance(PlanItem.class);
-        planItem.setId(HUMAN_TASK_KEY);
-        casePlanModel.addChildElement(planItem);
+        // The definition without case instances should not even get a progress entry
+        List<String> sourceCaseDefinitionIds = migrationProgressRepository.findByRunId(runId).stream()
+                .map(MigrationProgress::getSourceCaseDefinitionId)
+                .collect(Collectors.toList());
+        assertThat(sourceCaseDefinitionIds).contains(oldCaseDefinitionId).doesNotContain(emptyCaseDefinition.getId(), newCaseDefinitionId);
 
-        planItem.setDefinition(humanTask);
-        Cmmn.validateModel(caseMock);
-        repositoryService.createDeployment().addModelInstance("mock/" + "my_case_mock.cmmn", caseMock).deploy();
+        // The plan of a definition pair is built once
+        assertThat(planCache.get(oldCaseDefinitionId, newCaseDefinitionId)).isSameAs(planCache.get(oldCaseDefinitionId, newCaseDefinitionId));
     }
 
-    private void deployCaseMockWithAdditionalActivity() {
-        CmmnModelInstance caseMock = Cmmn.createEmptyModel();
+    @Test
+    public void shouldRenameActivitiesDuringMigration() {
+        migrationProperties.getActivityIdMappings().put(caseKey, ImmutableMap.of(HUMAN_TASK_KEY, RENAMED_HUMAN_TASK_KEY));
+        for (boolean bulkUpdate : new boolean[]{false, true}) {
+            StaleCaseInstances staleCaseInstances = givenStaleCaseInstances(1, RENAMED_HUMAN_TASK_KEY);
+            String caseInstanceId = staleCaseInstances.getCaseInstanceId();
 
-        Definitions definitions = caseMock.newInstance(Definitions.class);
-        definitions.setTargetNamespace("http://camunda.org/examples");
-        caseMock.setDefinitions(definitions);
+            // The dry run counts executions of renamed activities for the activity they are renamed to
+            assertThat(migrationPlanner.plan(caseKey).getActivitiesToAdd()).doesNotContainKey(RENAMED_HUMAN_TASK_KEY);
 
-        Case caseElement = caseMock.newInstance(Case.class);
-        caseElement.setId(CASE_KEY);
-        definitions.addChildElement(caseElement);
+            migrationProperties.setBulkUpdate(bulkUpdate);
+            execute(new MigrateCaseInstanceVersionCmd(caseKey, ctx));
 
-        CasePlanModel casePlanModel = caseMock.newInstance(CasePlanModel.class);
-        casePlanModel.setId(CASE_KEY + "_case");
-        caseElement.addChildElement(casePlanModel);
+            assertThatExecutionsAreMigrated(caseInstanceId);
 
-        HumanTask humanTask = caseMock.newInstance(HumanTask.class);
-        humanTask.setId(HUMAN_TASK_KEY + "_task");
-        casePlanModel.addChildElement(humanTask);
+            // Execution and task should have the activity id of the NEW definition
+            assertThat(caseService.createCaseExecutionQuery().caseInstanceId(caseInstanceId).activityId(RENAMED_HUMAN_TASK_KEY).count()).isEqualTo(1);
+            assertThat(caseService.createCaseExecutionQuery().caseInstanceId(caseInstanceId).activityId(HUMAN_TASK_KEY).count()).isZero();
 
-        PlanItem planItem = caseMock.newInstance(PlanItem.class);
-        planItem.setId(HUMAN_TASK_KEY);
-        casePlanModel.addChildElement(planItem);
+            Task task = taskService.createTaskQuery().caseInstanceId(caseInstanceId).singleResult();
+            assertThat(task.getTaskDefinitionKey()).isEqualTo(RENAMED_HUMAN_TASK_KEY);
+            assertThat(task.getCaseDefinitionId()).isEqualTo(staleCaseInstances.getNewCaseDefinition().getId());
+            assertThat(historyService.createHistoricTaskInstanceQuery().taskId(task.getId()).singleResult().getTaskDefinitionKey()).isEqualTo(RENAMED_HUMAN_TASK_KEY);
+        }
+    }
 
-        HumanTask humanTask2 = caseMock.newInstance(HumanTask.class);
-        humanTask2.setId(HUMAN_TASK_2_KEY + "_task");
-        casePlanModel.addChildElement(humanTask2);
+    @Test
+    public void shouldShareMigrationBetweenNodesByPartitionLeases() throws Exception {
+        StaleCaseInstances staleCaseInstances = givenStaleCaseInstances(6);
+        String newCaseDefinitionId = staleCaseInstances.getNewCaseDefinition().getId();
+
+        // Two nodes migrate concurrently, each with its own lease manager and node id, only the partitions it leased
+        List<PartitionLeaseManager> leaseManagers = Stream.of("node-a", "node-b")
+                .map(nodeId -> new PartitionLeaseManager(leaseRepository, transactionManager, nodeId, 10000, 50))
+                .collect(Collectors.toList());
+        migrationProperties.getSharding().setEnabled(true);
+        migrationProperties.getSharding().setPartitions(4);
+        migrationProperties.getSharding().setHeartbeatInterval(50);
+        ExecutorService nodes = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<?>> runs = leaseManagers.stream()
+                    .map(leaseManager -> nodes.submit(() -> execute(new MigrateCaseInstanceVersionCmd(caseKey, newCaseDefinitionId, UUID.randomUUID().toString(), ctx, leaseManager))))
+                    .collect(Collectors.toList());
+            for (Future<?> run : runs) {
+                run.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            nodes.shutdownNow();
+            leaseManagers.forEach(PartitionLeaseManager::shutdown);
+        }
+
+        staleCaseInstances.getCaseInstanceIds().forEach(caseInstanceId -> {
+            assertThatExecutionsAreMigrated(caseInstanceId);
+            assertThatTasksAreMigrated(caseInstanceId);
+        });
+
+        // Every partition is completed once, every case instance counted by exactly one of them
+        List<MigrationPartitionLease> leases = leaseRepository.findByTargetCaseDefinitionIdOrderByPartition(newCaseDefinitionId);
+        assertThat(leases).hasSize(4);
+        assertThat(leases.stream().allMatch(lease -> lease.getState() == MigrationPartitionLease.State.COMPLETED && lease.getOwner() == null)).isTrue();
+        assertThat(leases.stream().mapToLong(lease -> lease.getMigrated() + lease.getFailed()).sum()).isEqualTo(staleCaseInstances.getCaseInstanceIds().size());
+    }
 
-        PlanItem planItem2 = caseMock.newInstance(PlanItem.class);
-        planItem2.setId(HUMAN_TASK_2_KEY);
-        casePlanModel.addChildElement(planItem2);
+    @Test
+    public void shouldReleasePartitionLeaseWhenMigrationFails() {
+        StaleCaseInstances staleCaseInstances = givenStaleCaseInstances(4);
+        String newCaseDefinitionId = staleCaseInstances.getNewCaseDefinition().getId();
+
+        // Node A fails in the middle of its first partition, long before its lease would expire
+        PartitionLeaseManager nodeA = new PartitionLeaseManager(leaseRepository, transactionManager, "node-a", 60000, 50) {
+            @Override
+            public boolean isHeld(PartitionLease lease) {
+                throw new IllegalStateException("Simulated failure of node-a");
+            }
+        };
+        PartitionLeaseManager nodeB = new PartitionLeaseManager(leaseRepository, transactionManager, "node-b", 60000, 50);
+        migrationProperties.getSharding().setEnabled(true);
+        migrationProperties.getSharding().setPartitions(2);
+        migrationProperties.getSharding().setHeartbeatInterval(50);
+        try {
+            Throwable failure = catchThrowable(() -> execute(new MigrateCaseInstanceVersionCmd(caseKey, newCaseDefinitionId, UUID.randomUUID().toString(), ctx, nodeA)));
+            assertThat(failure).hasMessage("Simulated failure of node-a");
+
+            // The lease of the failed partition is released, not left to the heartbeat of node A
+            List<MigrationPartitionLease> leases = leaseRepository.findByTargetCaseDefinitionIdOrderByPartition(newCaseDefinitionId);
+            assertThat(leases).hasSize(2);
+            assertThat(leases.stream().allMatch(lease -> lease.getState() == MigrationPartitionLease.State.OPEN && lease.getOwner() == null)).isTrue();
+
+            // So node B takes over all partitions and finishes the migration
+            execute(new MigrateCaseInstanceVersionCmd(caseKey, newCaseDefinitionId, UUID.randomUUID().toString(), ctx, nodeB));
+        } finally {
+            nodeA.shutdown();
+            nodeB.shutdown();
+        }
+
+        assertThat(leaseRepository.findByTargetCaseDefinitionIdOrderByPartition(newCaseDefinitionId).stream()
+                .allMatch(lease -> lease.getState() == MigrationPartitionLease.State.COMPLETED)).isTrue();
+        staleCaseInstances.getCaseInstanceIds().forEach(caseInstanceId -> {
+            assertThatExecutionsAreMigrated(caseInstanceId);
+            assertThatTasksAreMigrated(caseInstanceId);
+        });
+    }
 
-        planItem.setDefinition(humanTask);
-        planItem2.setDefinition(humanTask2);
-        Cmmn.validateModel(caseMock);
-        repositoryService.createDeployment().addModelInstance("mock/" + "my_case_mock.cmmn", caseMock).deploy();
+    @Test
+    public void shouldMigrateCaseInstancesLazilyOnAccess() {
+        StaleCaseInstances staleCaseInstances = givenStaleCaseInstances(3);
+        String completingCaseInstanceId = staleCaseInstances.getCaseInstanceIds().get(0);
+        String updatedCaseInstanceId = staleCaseInstances.getCaseInstanceIds().get(1);
+        String untouchedCaseInstanceId = staleCaseInstances.getCaseInstanceIds().get(2);
+
+        migrationProperties.getLazy().setEnabled(true);
+        try {
+            Task task = taskService.createTaskQuery().caseInstanceId(completingCaseInstanceId).singleResult();
+            taskService.complete(task.getId());
+
+            caseService.setVariable(updatedCaseInstanceId, "updated", true);
+        } finally {
+            // The assertions below must not migrate the case instances they look at
+            migrationProperties.getLazy().setEnabled(false);
+        }
+
+        // Case instances touched by a command are migrated before the command runs
+        assertThat(historyService.createHistoricTaskInstanceQuery().caseInstanceId(completingCaseInstanceId).singleResult().getEndTime()).isNotNull();
+        assertThatExecutionsAreMigrated(completingCaseInstanceId);
+        assertThatHistoryIsMigrated(completingCaseInstanceId);
+
+        assertThatExecutionsAreMigrated(updatedCaseInstanceId);
+        assertThatTasksAreMigrated(updatedCaseInstanceId);
+        assertThat(caseService.getVariable(updatedCaseInstanceId, "updated")).isEqualTo(true);
+
+        // All others are left to the sweeper
+        assertThat(caseService.createCaseInstanceQuery().caseInstanceId(untouchedCaseInstanceId).singleResult().getCaseDefinitionId())
+                .isEqualTo(staleCaseInstances.getOldCaseDefinition().getId());
     }
 
+    @Test
+    public void shouldProduceHistoryFromCaseInstanceSnapshot() {
+        deployCaseMock();
+
+        CaseInstance caseInstance = caseService.createCaseInstanceByKey(caseKey, "business-key");
+
+        String newCaseDefinitionId = deployCaseMock(HUMAN_TASK_KEY).getId();
+
+        assertThat(migrationExecutor.migratePartition(ImmutableList.of(caseInstance.getCaseInstanceId()), newCaseDefinitionId)).isZero();
+
+        // The update event is produced from the snapshot of the case instance row, not from the engine's entity
+        HistoricCaseInstance historicCaseInstance = historyService.createHistoricCaseInstanceQuery().caseInstanceId(caseInstance.getCaseInstanceId()).singleResult();
+        assertThat(historicCaseInstance.getCaseDefinitionId()).isEqualTo(newCaseDefinitionId);
+        assertThat(historicCaseInstance.getBusinessKey()).isEqualTo("business-key");
+        assertThat(historicCaseInstance.isActive()).isTrue();
+
+        // The detached snapshot is never flushed, so it does not overwrite the migrated runtime row
+        assertThat(caseService.createCaseInstanceQuery().caseInstanceId(caseInstance.getCaseInstanceId()).singleResult().getCaseDefinitionId())
+                .isEqualTo(newCaseDefinitionId);
+        assertThatTasksAreMigrated(caseInstance.getCaseInstanceId());
+    }
 }
@@ -0,0 +1,70 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.migrator;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import io.holunda.camunda.example.caseinstancemigration.migration.AbstractCaseMigrationTest;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MigrationSummaryLogTest extends AbstractCaseMigrationTest {
+
+    @Autowired
+    private MigrationSummaryLog summaryLog;
+
+    @Autowired
+    private CaseInstanceMigrationExecutor migrationExecutor;
+
+    @Test
+    public void shouldLogPerEntityDetailAtDebugAndSummarizeChunksAtInfo() {
+        StaleCaseInstances staleCaseInstances = givenStaleCaseInstances(2);
+
+        // Starts with an empty summary, chunks of other tests are logged before the appender is attached
+        summaryLog.flush();
+
+        ch.qos.logback.classic.Logger migrationLogger = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(CaseInstanceMigrator.class.getPackage().getName());
+        Level level = migrationLogger.getLevel();
+        ListAppender<ILoggingEvent> appender = new ListAppender<>();
+        appender.start();
+        migrationLogger.addAppender(appender);
+        migrationLogger.setLevel(Level.DEBUG);
+
+        migrationProperties.setSummaryLogInterval(3600);
+        try {
+            assertThat(migrationExecutor.migratePartition(staleCaseInstances.getCaseInstanceIds(), staleCaseInstances.getNewCaseDefinition().getId())).isZero();
+
+            // Per-entity detail is logged at DEBUG only, with parameters that are formatted lazily
+            List<ILoggingEvent> details = appender.list.stream()
+                    .filter(event -> event.getLoggerName().equals(CaseInstanceMigrator.class.getName()) || event.getLoggerName().equals(TaskMigrator.class.getName()))
+                    .collect(Collectors.toList());
+            assertThat(details).isNotEmpty();
+            assertThat(details.stream().allMatch(event -> event.getLevel() == Level.DEBUG && event.getMessage().contains("{}") && event.getArgumentArray() != null)).isTrue();
+
+            // Both chunks are accumulated within the interval and summarized in a single line when flushed
+            assertThat(appender.list.stream().noneMatch(event -> event.getLoggerName().equals(MigrationSummaryLog.class.getName()))).isTrue();
+
+            summaryLog.flush();
+
+            List<ILoggingEvent> summaries = appender.list.stream()
+                    .filter(event -> event.getLoggerName().equals(MigrationSummaryLog.class.getName()))
+                    .collect(Collectors.toList());
+            assertThat(summaries).hasSize(1);
+            assertThat(summaries.get(0).getLevel()).isEqualTo(Level.INFO);
+            assertThat(summaries.get(0).getArgumentArray()).startsWith(2L, 4L, 2L, 2L, 0L);
+        } finally {
+            migrationLogger.setLevel(level);
+            migrationLogger.detachAppender(appender);
+        }
+
+        staleCaseInstances.getCaseInstanceIds().forEach(caseInstanceId -> {
+            assertThatExecutionsAreMigrated(caseInstanceId);
+            assertThatTasksAreMigrated(caseInstanceId);
+        });
+    }
+}
@@ -0,0 +1,57 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.migrator;
+
+import io.holunda.camunda.example.caseinstancemigration.migration.AbstractCaseMigrationTest;
+import io.holunda.camunda.example.caseinstancemigration.migration.application.CaseMigrationThrottleEndpoint;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MigrationThrottleTest extends AbstractCaseMigrationTest {
+
+    @Autowired
+    private MigrationThrottle throttle;
+
+    @Autowired
+    private CaseMigrationThrottleEndpoint throttleEndpoint;
+
+    @Autowired
+    private CaseInstanceMigrationExecutor migrationExecutor;
+
+    @Test
+    public void shouldAdaptMigrationRateToCommitLatency() {
+        StaleCaseInstances staleCaseInstances = givenStaleCaseInstances(3);
+
+        migrationProperties.getThrottle().setEnabled(true);
+
+        // The limits are changed at runtime, the rate is clamped to them
+        assertThat(throttleEndpoint.updateLimits(2.0, 10.0, 100L, null))
+                .containsEntry("enabled", true)
+                .containsEntry("rate", 10.0)
+                .containsEntry("maxRate", 10.0);
+
+        // Nobody waits for a connection of the tomcat-jdbc pool in this test
+        assertThat(throttle.getConnectionWaiters()).isZero();
+
+        // Slow chunks halve the rate down to the minimum, fast ones increase it step by step up to the maximum
+        throttle.chunkCompleted(TimeUnit.MILLISECONDS.toNanos(200));
+        assertThat(throttle.getRate()).isEqualTo(5.0);
+        throttle.chunkCompleted(TimeUnit.MILLISECONDS.toNanos(200));
+        throttle.chunkCompleted(TimeUnit.MILLISECONDS.toNanos(200));
+        assertThat(throttle.getRate()).isEqualTo(2.0);
+        throttle.chunkCompleted(TimeUnit.MILLISECONDS.toNanos(1));
+        assertThat(throttle.getRate()).isEqualTo(7.0);
+        throttle.chunkCompleted(TimeUnit.MILLISECONDS.toNanos(1));
+        assertThat(throttle.getRate()).isEqualTo(10.0);
+
+        assertThat(migrationExecutor.migratePartition(staleCaseInstances.getCaseInstanceIds(), staleCaseInstances.getNewCaseDefinition().getId())).isZero();
+        assertThat(throttle.getRate()).isBetween(2.0, 10.0);
+
+        staleCaseInstances.getCaseInstanceIds().forEach(caseInstanceId -> {
+            assertThatExecutionsAreMigrated(caseInstanceId);
+            assertThatTasksAreMigrated(caseInstanceId);
+        });
+    }
+}
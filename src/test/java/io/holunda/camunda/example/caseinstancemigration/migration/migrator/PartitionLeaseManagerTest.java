@@ -0,0 +1,56 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.migrator;
+
+import com.google.common.collect.ImmutableList;
+import io.holunda.camunda.example.caseinstancemigration.migration.AbstractCaseMigrationTest;
+import io.holunda.camunda.example.caseinstancemigration.migration.domain.MigrationPartitionLeaseRepository;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PartitionLeaseManagerTest extends AbstractCaseMigrationTest {
+
+    @Autowired
+    private MigrationPartitionLeaseRepository leaseRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    public void shouldStealExpiredPartitionLease() throws Exception {
+        String targetCaseDefinitionId = UUID.randomUUID().toString();
+
+        PartitionLeaseManager nodeA = new PartitionLeaseManager(leaseRepository, transactionManager, "node-a", 200, 50);
+        PartitionLeaseManager nodeB = new PartitionLeaseManager(leaseRepository, transactionManager, "node-b", 200, 50);
+        try {
+            nodeA.openPartitions(targetCaseDefinitionId, ImmutableList::of);
+            nodeB.openPartitions(targetCaseDefinitionId, ImmutableList::of);
+
+            PartitionLease leaseA = nodeA.acquire(targetCaseDefinitionId);
+            assertThat(leaseA).isNotNull();
+
+            // The heartbeat keeps the lease of node A alive beyond its duration
+            TimeUnit.MILLISECONDS.sleep(400);
+            assertThat(nodeB.acquire(targetCaseDefinitionId)).isNull();
+
+            // Node A dies, so its lease expires and node B steals the partition
+            nodeA.shutdown();
+            TimeUnit.MILLISECONDS.sleep(400);
+            PartitionLease leaseB = nodeB.acquire(targetCaseDefinitionId);
+            assertThat(leaseB).isNotNull();
+            assertThat(leaseB.getPartition()).isEqualTo(leaseA.getPartition());
+
+            assertThat(nodeA.complete(leaseA, 1, 0)).isFalse();
+            assertThat(nodeB.isCompleted(targetCaseDefinitionId)).isFalse();
+            assertThat(nodeB.complete(leaseB, 1, 0)).isTrue();
+            assertThat(nodeB.isCompleted(targetCaseDefinitionId)).isTrue();
+        } finally {
+            nodeA.shutdown();
+            nodeB.shutdown();
+        }
+    }
+}
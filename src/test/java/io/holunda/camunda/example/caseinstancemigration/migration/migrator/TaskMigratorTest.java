@@ -0,0 +1,36 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.migrator;
+
+import io.holunda.camunda.example.caseinstancemigration.migration.AbstractCaseMigrationTest;
+import io.holunda.camunda.example.caseinstancemigration.migration.domain.CamundaTaskRepository;
+import org.camunda.bpm.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.camunda.bpm.engine.impl.interceptor.CommandExecutor;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TaskMigratorTest extends AbstractCaseMigrationTest {
+
+    @Autowired
+    private TaskMigrator taskMigrator;
+
+    @Test
+    public void shouldStreamTasksOfChunkBeyondFetchSize() {
+        StaleCaseInstances staleCaseInstances = givenStaleCaseInstances(Integer.parseInt(CamundaTaskRepository.FETCH_SIZE) + 2);
+        List<String> caseInstanceIds = staleCaseInstances.getCaseInstanceIds();
+        String newCaseDefinitionId = staleCaseInstances.getNewCaseDefinition().getId();
+
+        CommandExecutor commandExecutor = ((ProcessEngineConfigurationImpl) processEngine.getProcessEngineConfiguration()).getCommandExecutorTxRequiresNew();
+
+        // The task of the first case instance is migrated already, the stale tasks of the others exceed one fetch
+        Integer migratedBefore = commandExecutor.execute(commandContext -> taskMigrator.migrateAllTasksForCaseInstances(caseInstanceIds.subList(0, 1), newCaseDefinitionId));
+        assertThat(migratedBefore).isEqualTo(1);
+
+        Integer migrated = commandExecutor.execute(commandContext -> taskMigrator.migrateAllTasksForCaseInstances(caseInstanceIds, newCaseDefinitionId));
+        assertThat(migrated).isEqualTo(caseInstanceIds.size() - 1);
+
+        assertThat(taskService.createTaskQuery().caseDefinitionId(newCaseDefinitionId).count()).isEqualTo(caseInstanceIds.size());
+    }
+}
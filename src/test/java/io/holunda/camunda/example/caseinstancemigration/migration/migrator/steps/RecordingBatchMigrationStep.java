@@ -0,0 +1,41 @@
+package io.holunda.camunda.example.caseinstancemigration.migration.migrator.steps;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Records the chunks it sees, but only while a source case definition is set, and is a no-op for any other.
+ */
+public class RecordingBatchMigrationStep implements CaseExecutionBatchMigrationStep {
+
+    public static final List<CaseExecutionMigrationChunk> CHUNKS = new CopyOnWriteArrayList<>();
+
+    public static volatile String sourceCaseDefinitionId;
+
+    public static volatile Consumer<CaseExecutionMigrationChunk> action = chunk -> {
+    };
+
+    public static void reset() {
+        CHUNKS.clear();
+        sourceCaseDefinitionId = null;
+        action = chunk -> {
+        };
+    }
+
+    @Override
+    public void migrate(CaseExecutionMigrationChunk chunk) {
+        CHUNKS.add(chunk);
+        action.accept(chunk);
+    }
+
+    @Override
+    public boolean isNoOpFor(String sourceCaseDefinitionId, String targetCaseDefinitionId) {
+        return !sourceCaseDefinitionId.equals(RecordingBatchMigrationStep.sourceCaseDefinitionId);
+    }
+
+    @Override
+    public boolean requiresExecution() {
+        return false;
+    }
+}